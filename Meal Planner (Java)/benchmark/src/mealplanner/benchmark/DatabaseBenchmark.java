@@ -0,0 +1,190 @@
+package mealplanner.benchmark;
+
+import mealplanner.Main;
+import mealplanner.controller.ConnectionPool;
+import mealplanner.controller.Database;
+import mealplanner.controller.EmbeddedStore;
+import mealplanner.controller.MealCatalog;
+import mealplanner.controller.Storage;
+import mealplanner.model.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read and write paths of the storage backends: {@link Database} against a local PostgreSQL, and
+ * {@link EmbeddedStore} on a temporary file.
+ * <p>
+ * The PostgreSQL runs use their own database, {@code meals_bench}, created on first use with the credentials from
+ * {@code db.properties}; its tables are emptied before every run. Another database can be given with
+ * {@code -Dbenchmark.jdbc.url=...}, it is emptied as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DatabaseBenchmark {
+    private static final String DEFAULT_URL = "jdbc:postgresql:meals_bench?reWriteBatchedInserts=true";
+    private static final int MEALS_PER_CATEGORY = 1000;
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"postgres", "embedded"})
+    public String backend;
+
+    private Storage db;
+    private Path storeFile;
+    private MealCatalog catalog;
+    private PlanKey planKey;
+    private List<List<PlanLineItem>> weeks;
+    private int nextMeal;
+    private int nextWeek;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        Properties properties = new Properties();
+        try (InputStream inputStream = Main.class.getResourceAsStream("/db.properties")) {
+            properties.load(inputStream);
+        }
+        if (backend.equals("embedded")) {
+            storeFile = Files.createTempFile("meals_bench", ".db");
+            Files.delete(storeFile); // the store writes its header into a new file
+            db = new EmbeddedStore(storeFile, properties);
+            db.initDbStructures();
+        } else {
+            db = openPostgres(properties);
+        }
+
+        for (MealCategory category : MealCategory.values()) {
+            List<Meal> meals = new ArrayList<>();
+            for (int i = 0; i < MEALS_PER_CATEGORY; i++) {
+                meals.add(newMeal(category));
+            }
+            db.persistMeals(meals);
+        }
+        catalog = MealCatalog.create(db);
+
+        // two different weeks, so that every persisted plan changes all slots
+        weeks = new ArrayList<>();
+        for (int week = 0; week < 2; week++) {
+            List<PlanLineItem> items = new ArrayList<>();
+            for (Weekday weekday : Weekday.values()) {
+                for (MealCategory category : MealCategory.values()) {
+                    List<String> meals = catalog.getMealNames(category);
+                    String meal = meals.get((week * 7 + weekday.ordinal()) % meals.size());
+                    items.add(new PlanLineItem(weekday, category, meal));
+                }
+            }
+            weeks.add(items);
+        }
+        planKey = new PlanKey(PlanKey.DEFAULT_HOUSEHOLD, LocalDate.of(2024, 1, 1));
+        db.persistPlan(planKey, weeks.get(0));
+    }
+
+    private static Storage openPostgres(Properties properties) throws SQLException {
+        String url = System.getProperty("benchmark.jdbc.url");
+        if (url == null) {
+            url = DEFAULT_URL;
+            createBenchmarkDatabase(properties);
+        }
+        properties.setProperty("jdbc.url", url);
+
+        ConnectionPool pool = ConnectionPool.fromProperties(properties);
+        Database db = new Database(pool);
+        db.initDbStructures();
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("truncate shopping_list, plan, ingredients, ingredient_names, meals");
+        }
+        return db;
+    }
+
+    private static void createBenchmarkDatabase(Properties properties) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(properties.getProperty("jdbc.createurl"),
+                properties.getProperty("jdbc.username"), properties.getProperty("jdbc.password"));
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("create database meals_bench");
+        } catch (SQLException e) {
+            if (!"42P04".equals(e.getSQLState())) { // duplicate_database
+                throw e;
+            }
+        }
+    }
+
+    private Meal newMeal(MealCategory category) {
+        int number = nextMeal++;
+        return new Meal(category, "bench" + category.name().toLowerCase() + number,
+                String.format("%d g flour, 2 eggs, milk, ingredient%d, ingredient%d",
+                        100 + number % 400, number % 500, number % 1500));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        db.closeConnections();
+        if (storeFile != null) {
+            Files.deleteIfExists(storeFile);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean persistMeals() {
+        List<Meal> meals = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            meals.add(newMeal(MealCategory.LUNCH));
+        }
+        return db.persistMeals(meals);
+    }
+
+    @Benchmark
+    public void showCategory(Blackhole blackhole) throws IOException {
+        db.streamMealsByCategory(MealCategory.BREAKFAST, blackhole::consume);
+    }
+
+    @Benchmark
+    public List<Meal> loadCategory() {
+        return db.getMealsByCategory(MealCategory.BREAKFAST, false);
+    }
+
+    @Benchmark
+    public List<Meal> loadSortedCategory() {
+        return db.getMealsByCategory(MealCategory.DINNER, true);
+    }
+
+    @Benchmark
+    public boolean isMealValid() {
+        return Main.isMealValid(catalog, MealCategory.DINNER, "benchdinner" + (2 * MEALS_PER_CATEGORY + 500));
+    }
+
+    @Benchmark
+    public void persistPlan() {
+        db.persistPlan(planKey, weeks.get(nextWeek++ % 2));
+    }
+
+    @Benchmark
+    public void replaceSlot() {
+        PlanLineItem item = weeks.get(nextWeek++ % 2).get(4);
+        db.replaceSlot(planKey, item);
+    }
+
+    @Benchmark
+    public void streamShoppingList(Blackhole blackhole) throws IOException {
+        db.streamShoppingList(List.of(planKey), (ingredient, amount, unit) -> {
+            blackhole.consume(ingredient);
+            blackhole.consume(amount);
+        });
+    }
+}
@@ -0,0 +1,51 @@
+package mealplanner.benchmark;
+
+import mealplanner.helper.MealValidator;
+import mealplanner.helper.Util;
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory hot paths of adding and showing meals: parsing the ingredient input, validating it and
+ * formatting a meal for {@code show}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MealBenchmark {
+    @Param({"salmon, rice, avocado", "200 g flour, 2 eggs, 1.5kg potatoes, 3 tbsp olive oil, milk, salt"})
+    public String ingredients;
+
+    private Meal meal;
+
+    @Setup
+    public void setUp() {
+        meal = new Meal(MealCategory.DINNER, "sushi", ingredients);
+    }
+
+    @Benchmark
+    public Meal createMeal() {
+        return new Meal(MealCategory.DINNER, "sushi", ingredients);
+    }
+
+    @Benchmark
+    public String mealToString() {
+        return meal.toString();
+    }
+
+    @Benchmark
+    public boolean validateIngredients() {
+        return MealValidator.isValidIngredients(ingredients);
+    }
+
+    @Benchmark
+    public String initCap() {
+        return Util.initCap("WEDNESDAY");
+    }
+}
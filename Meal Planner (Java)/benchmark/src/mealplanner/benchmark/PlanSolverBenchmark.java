@@ -0,0 +1,62 @@
+package mealplanner.benchmark;
+
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.planner.PlanConstraints;
+import mealplanner.planner.PlanSolution;
+import mealplanner.planner.PlanSolver;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Automatic planning over a synthetic catalog: meals of 3 to 8 ingredients drawn from a pool of 2000.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlanSolverBenchmark {
+    @Param({"1000", "20000"})
+    public int mealsPerCategory;
+
+    private List<List<Meal>> catalog;
+    private PlanSolver solver;
+    private PlanConstraints constraints;
+    private long seed;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        catalog = new ArrayList<>();
+        for (MealCategory category : MealCategory.values()) {
+            List<Meal> meals = new ArrayList<>(mealsPerCategory);
+            for (int i = 0; i < mealsPerCategory; i++) {
+                String[] ingredients = new String[3 + random.nextInt(6)];
+                for (int j = 0; j < ingredients.length; j++) {
+                    ingredients[j] = "ingredient" + random.nextInt(2000);
+                }
+                meals.add(new Meal(category, category.name().toLowerCase() + i, ingredients));
+            }
+            catalog.add(meals);
+        }
+        solver = new PlanSolver(catalog);
+        constraints = new PlanConstraints(7, Set.of("ingredient1"), Set.of("ingredient2"), 0);
+    }
+
+    @Benchmark
+    public PlanSolver buildSolver() {
+        return new PlanSolver(catalog);
+    }
+
+    @Benchmark
+    public PlanSolution solve() {
+        return solver.solve(constraints.withSeed(seed++));
+    }
+}
@@ -0,0 +1,24 @@
+-- tables as created by the planner before schema versioning; "if not exists" adopts existing databases
+
+-- meals: category (varchar), meal (varchar), meal_id (integer)
+create table if not exists meals (
+    category varchar(1024) NOT NULL,
+    meal varchar(1024) NOT NULL,
+    meal_id integer
+);
+
+-- ingredients: ingredient (varchar), ingredient_id (integer), meal_id (integer)
+create table if not exists ingredients (
+    ingredient varchar(1024) NOT NULL,
+    ingredient_id integer,
+    meal_id integer
+);
+
+-- plan: category (integer), meal (varchar), meal_id (integer), weekday
+-- normalized poorly, however, this is the spec (see V4)
+create table if not exists plan (
+    category integer NOT NULL, -- facilitates less # of DB calls + easier sort than varchar-based implementation
+    meal varchar(1024) NOT NULL,
+    meal_id integer,
+    weekday integer
+);
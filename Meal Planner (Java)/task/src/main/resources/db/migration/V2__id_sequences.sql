@@ -0,0 +1,18 @@
+-- ids are handed out in blocks of 100 per nextval, see SequenceAllocator.BLOCK_SIZE
+-- a sequence seeds itself from max() once, when it is created, and is dropped together with its table
+
+do $$
+begin
+    if to_regclass('meal_id_seq') is null then
+        create sequence meal_id_seq increment by 100 owned by meals.meal_id;
+        perform setval('meal_id_seq', coalesce((select max(meal_id) from meals), 0) + 1, false);
+    end if;
+end $$;
+
+do $$
+begin
+    if to_regclass('ingredient_id_seq') is null then
+        create sequence ingredient_id_seq increment by 100 owned by ingredients.ingredient_id;
+        perform setval('ingredient_id_seq', coalesce((select max(ingredient_id) from ingredients), 0) + 1, false);
+    end if;
+end $$;
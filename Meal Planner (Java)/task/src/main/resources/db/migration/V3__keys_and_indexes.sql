@@ -0,0 +1,27 @@
+-- constraints are guarded because databases set up by earlier versions may already have them
+
+do $$
+begin
+    if not exists (select from pg_constraint where conname = 'meals_pkey') then
+        alter table meals add constraint meals_pkey primary key (meal_id);
+    end if;
+    if not exists (select from pg_constraint where conname = 'meals_meal_key') then
+        alter table meals add constraint meals_meal_key unique (meal);
+    end if;
+    if not exists (select from pg_constraint where conname = 'ingredients_meal_id_fkey') then
+        alter table ingredients add constraint ingredients_meal_id_fkey
+            foreign key (meal_id) references meals (meal_id) on delete cascade;
+    end if;
+    if not exists (select from pg_constraint where conname = 'plan_meal_id_fkey') then
+        alter table plan add constraint plan_meal_id_fkey foreign key (meal_id) references meals (meal_id);
+    end if;
+    if not exists (select from pg_constraint where conname = 'plan_weekday_category_key') then
+        alter table plan add constraint plan_weekday_category_key unique (weekday, category);
+    end if;
+end $$;
+
+-- show and plan list one category, plan sorted by name
+create index if not exists meals_category_meal_idx on meals (category, meal);
+
+-- ingredients of a meal, and the shopping list join with plan
+create index if not exists ingredients_meal_id_idx on ingredients (meal_id);
@@ -0,0 +1,8 @@
+-- a plan slot only references its meal, the name is joined in from meals
+
+alter table plan drop column meal;
+alter table plan alter column meal_id set not null;
+alter table plan alter column weekday set not null;
+
+alter table plan drop constraint plan_weekday_category_key;
+alter table plan add constraint plan_pkey primary key (weekday, category);
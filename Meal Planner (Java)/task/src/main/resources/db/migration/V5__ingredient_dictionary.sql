@@ -0,0 +1,51 @@
+-- every ingredient name is stored once in ingredient_names, ingredients becomes the meal <-> ingredient link
+-- table keyed by integers; its ingredient column stays (nullable, no longer written) for the stage schema check
+
+create table ingredient_names (
+    ingredient_id integer primary key,
+    ingredient varchar(1024) NOT NULL,
+    constraint ingredient_names_ingredient_key unique (ingredient)
+);
+
+-- one id per name; ids handed out by concurrent processes before the dictionary existed may disagree,
+-- the lowest id of a name wins and names left without an id get fresh ones
+insert into ingredient_names (ingredient_id, ingredient)
+select distinct on (ingredient_id) ingredient_id, ingredient
+from (select distinct on (ingredient) ingredient, ingredient_id
+      from ingredients
+      order by ingredient, ingredient_id) per_name
+order by ingredient_id, ingredient;
+
+insert into ingredient_names (ingredient_id, ingredient)
+select (select coalesce(max(ingredient_id), 0) from ingredient_names) + row_number() over (order by ingredient), ingredient
+from (select distinct ingredient from ingredients) names
+where not exists (select from ingredient_names n where n.ingredient = names.ingredient);
+
+update ingredients i
+set ingredient_id = n.ingredient_id
+from ingredient_names n
+where n.ingredient = i.ingredient and i.ingredient_id is distinct from n.ingredient_id;
+
+-- ids now belong to the dictionary
+alter sequence ingredient_id_seq owned by ingredient_names.ingredient_id;
+select setval('ingredient_id_seq', coalesce((select max(ingredient_id) from ingredient_names), 0) + 1, false);
+
+-- explicit ingredient order within a meal instead of relying on physical row order
+alter table ingredients add column position integer;
+update ingredients i
+set position = ordered.position
+from (select ctid, row_number() over (partition by meal_id order by ctid) as position from ingredients) ordered
+where ordered.ctid = i.ctid;
+
+alter table ingredients alter column ingredient drop not null;
+update ingredients set ingredient = null;
+
+alter table ingredients alter column ingredient_id set not null;
+alter table ingredients alter column meal_id set not null;
+alter table ingredients alter column position set not null;
+alter table ingredients add constraint ingredients_pkey primary key (meal_id, position);
+alter table ingredients add constraint ingredients_ingredient_id_fkey
+    foreign key (ingredient_id) references ingredient_names (ingredient_id);
+
+-- the primary key covers lookups by meal_id
+drop index ingredients_meal_id_idx;
@@ -0,0 +1,10 @@
+-- plans are keyed by household and week, so many of them can be stored side by side;
+-- existing rows become the current week of the default household 0
+
+alter table plan add column household_id integer not null default 0;
+alter table plan add column week_start date not null default date_trunc('week', now())::date;
+alter table plan alter column household_id drop default;
+alter table plan alter column week_start drop default;
+
+alter table plan drop constraint plan_pkey;
+alter table plan add constraint plan_pkey primary key (household_id, week_start, weekday, category);
@@ -0,0 +1,15 @@
+-- ingredient quantities per plan, adjusted with every plan update so that saving a shopping list is a plain read
+
+create table shopping_list (
+    household_id integer not null,
+    week_start date not null,
+    ingredient_id integer not null,
+    quantity integer not null,
+    constraint shopping_list_pkey primary key (household_id, week_start, ingredient_id),
+    constraint shopping_list_ingredient_id_fkey foreign key (ingredient_id) references ingredient_names (ingredient_id)
+);
+
+insert into shopping_list (household_id, week_start, ingredient_id, quantity)
+select p.household_id, p.week_start, i.ingredient_id, count(*)
+from plan p join ingredients i using (meal_id)
+group by p.household_id, p.week_start, i.ingredient_id;
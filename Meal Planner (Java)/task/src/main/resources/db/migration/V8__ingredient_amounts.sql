@@ -0,0 +1,13 @@
+-- ingredients carry an amount in a base unit: pc (pieces), g or ml; the shopping list sums amounts per unit.
+-- Ingredients stored so far count as one piece, so existing list quantities carry over unchanged
+
+alter table ingredients add column amount numeric(12, 3) not null default 1;
+alter table ingredients add column unit varchar(2) not null default 'pc';
+
+alter table shopping_list rename column quantity to amount;
+alter table shopping_list alter column amount type numeric(14, 3);
+alter table shopping_list add column unit varchar(2) not null default 'pc';
+alter table shopping_list alter column unit drop default;
+alter table shopping_list drop constraint shopping_list_pkey;
+alter table shopping_list add constraint shopping_list_pkey
+    primary key (household_id, week_start, ingredient_id, unit);
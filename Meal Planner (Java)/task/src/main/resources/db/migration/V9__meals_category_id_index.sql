@@ -0,0 +1,2 @@
+-- show streams a category in insertion order, in keyset pages after the last meal_id
+create index if not exists meals_category_meal_id_idx on meals (category, meal_id);
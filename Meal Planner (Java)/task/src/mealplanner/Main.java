@@ -1,18 +1,67 @@
 package mealplanner;
 
-import mealplanner.controller.Database;
+import mealplanner.controller.CatalogSnapshot;
+import mealplanner.controller.MealCatalog;
+import mealplanner.controller.Storage;
+import mealplanner.controller.StorageException;
+import mealplanner.export.ShoppingListExporter;
+import mealplanner.helper.MealPrinter;
+import mealplanner.helper.RecipeImporter;
+import mealplanner.helper.ScriptRunner;
 import mealplanner.model.*;
+import mealplanner.planner.PlanBatchGenerator;
+import mealplanner.planner.PlanConstraints;
+import mealplanner.planner.PlanSolution;
+import mealplanner.planner.PlanSolver;
+import mealplanner.search.MealIndex;
+import mealplanner.search.MealQuery;
+import mealplanner.search.PantryMatch;
+import mealplanner.search.PantryMatcher;
+import mealplanner.search.SearchCatalog;
+import mealplanner.search.SearchHit;
 
-import java.util.List;
-import java.util.Scanner;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.function.Consumer;
 
+import static mealplanner.helper.MealValidator.isValidIngredients;
+import static mealplanner.helper.MealValidator.isValidMealName;
 import static mealplanner.helper.Util.initCap;
-import static mealplanner.helper.Util.persistShoppingListToFile;
 
 public class Main {
+    private static final int MAX_PRINTED_HITS = 100;
+
     public static void main(String[] args) {
-        Database db = new Database();
+        try {
+            run(args);
+        } catch (StorageException e) {
+            // failures of the storage itself, the dialogue can't go on without it
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void run(String[] args) {
+        Storage db = Storage.open();
         db.initDbStructures();
+        if (args.length > 0) { // non-interactive use, e.g. "import recipes.csv"
+            runCommandLine(args, db);
+            db.closeConnections();
+            return;
+        }
+        MealCatalog catalog = MealCatalog.create(db);
+        SearchCatalog searchCatalog = new SearchCatalog(db); // loaded on the first search or match
+        MealIndex index = new MealIndex(searchCatalog);
+        PantryMatcher pantryMatcher = new PantryMatcher(searchCatalog);
         Scanner scanner = new Scanner(System.in);
 
         mainLoop: while (true) {
@@ -27,22 +76,174 @@ public class Main {
             switch (command) {
                 case ADD -> addLogic(scanner, db);
                 case SHOW -> showLogic(scanner, db);
-                case PLAN -> planLogic(scanner, db);
+                case PLAN -> planLogic(scanner, db, catalog);
                 case SAVE -> saveLogic(scanner, db);
+                case IMPORT -> importLogic(scanner, db);
+                case AUTOPLAN -> autoplanLogic(scanner, db, catalog);
+                case EDIT -> editLogic(scanner, db, catalog);
+                case SWAP -> swapLogic(scanner, db);
+                case SEARCH -> searchLogic(scanner, index);
+                case PANTRY -> pantryLogic(scanner, pantryMatcher);
                 case EXIT -> { db.closeConnections(); System.out.println("Bye!"); break mainLoop;}
             }
         }
     }
 
-    private static void saveLogic(Scanner scanner, Database db) {
-        if (db.isPlanTableEmpty()) {
+    private static void runCommandLine(String[] args, Storage db) {
+        Runnable command;
+        try {
+            command = parseCommandLine(args, db);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            command = null;
+        }
+        if (command != null) {
+            command.run();
+            return;
+        }
+        System.out.println("Usage: import <file.csv|file.jsonl> [chunk size]");
+        System.out.println("       autoplan <households> [week start, yyyy-mm-dd] [days before a meal may repeat]");
+        System.out.println("       export <file.txt|file.csv|file.json> <household|first-last> " +
+                "[week start] [weeks]");
+        System.out.println("       run <script file|-> (one command per line, see ScriptRunner)");
+        System.out.println("       snapshot <file> (catalog snapshot for cache.meals.snapshot)");
+    }
+
+    /**
+     * Checks all arguments before anything runs.
+     *
+     * @return null if the command is unknown or its arguments are missing
+     * @throws IllegalArgumentException if an argument is malformed or out of range
+     */
+    private static Runnable parseCommandLine(String[] args, Storage db) {
+        if (args[0].equalsIgnoreCase("import") && args.length >= 2) {
+            int chunkSize = args.length > 2
+                    ? parseArgument(args[2], "chunk size", 1)
+                    : RecipeImporter.DEFAULT_CHUNK_SIZE;
+            return () -> importFile(args[1], chunkSize, db);
+        } else if (args[0].equalsIgnoreCase("autoplan") && args.length >= 2) {
+            int households = parseArgument(args[1], "number of households", 1);
+            LocalDate weekStart = args.length > 2
+                    ? parseWeekStart(args[2])
+                    : PlanKey.currentWeek(PlanKey.DEFAULT_HOUSEHOLD).weekStart();
+            int noRepeatDays = args.length > 3 ? parseArgument(args[3], "days before a meal may repeat", 0) : 0;
+            return () -> autoplanHouseholds(households, weekStart, noRepeatDays, db);
+        } else if (args[0].equalsIgnoreCase("export") && args.length >= 3) {
+            String[] range = args[2].split("-", 2);
+            int first = parseArgument(range[0], "household", 0);
+            int last = range.length > 1 ? parseArgument(range[1], "last household", first) : first;
+            LocalDate weekStart = args.length > 3
+                    ? parseWeekStart(args[3])
+                    : PlanKey.currentWeek(PlanKey.DEFAULT_HOUSEHOLD).weekStart();
+            int weeks = args.length > 4 ? parseArgument(args[4], "weeks", 1) : 1;
+            return () -> exportShoppingList(args[1], first, last, weekStart, weeks, db);
+        } else if (args[0].equalsIgnoreCase("run") && args.length >= 2) {
+            return () -> runScript(args[1], db);
+        } else if (args[0].equalsIgnoreCase("snapshot") && args.length >= 2) {
+            return () -> writeSnapshot(args[1], db);
+        }
+        return null;
+    }
+
+    private static int parseArgument(String value, String name, int min) {
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number >= min) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(String.format("Wrong %s \"%s\", expected a whole number of at least %d.",
+                name, value, min));
+    }
+
+    private static LocalDate parseWeekStart(String value) {
+        try {
+            return LocalDate.parse(value.trim()).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(String.format("Wrong week start \"%s\", expected yyyy-mm-dd.",
+                    value));
+        }
+    }
+
+    private static void writeSnapshot(String fileName, Storage db) {
+        try {
+            long meals = CatalogSnapshot.write(db, Path.of(fileName));
+            System.out.printf("Saved %d meals to %s.%n", meals, fileName);
+        } catch (IOException | InvalidPathException e) {
+            System.out.printf("Unable to save %s: %s%n", fileName, e.getMessage());
+        }
+    }
+
+    private static void runScript(String fileName, Storage db) {
+        // one buffer for the whole run, flushed when the script ends; System.out flushes on every line
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8), 1 << 16));
+        ScriptRunner runner = new ScriptRunner(db, out);
+        try (BufferedReader script = fileName.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(fileName), StandardCharsets.UTF_8)) {
+            runner.run(script);
+        } catch (IOException | InvalidPathException e) {
+            out.printf("Unable to read %s: %s%n", fileName, e.getMessage());
+        }
+        out.println(runner.summary());
+        out.flush();
+    }
+
+    // one combined list over the households and weeks
+    private static void exportShoppingList(String fileName, int first, int last, LocalDate weekStart, int weeks,
+                                           Storage db) {
+        List<PlanKey> planKeys = new ArrayList<>();
+        for (int household = first; household <= last; household++) {
+            for (int week = 0; week < weeks; week++) {
+                planKeys.add(new PlanKey(household, weekStart.plusWeeks(week)));
+            }
+        }
+        try {
+            new ShoppingListExporter(db).export(planKeys, Path.of(fileName));
+            System.out.println("Saved!");
+        } catch (IOException | InvalidPathException e) {
+            System.out.printf("Unable to save %s: %s%n", fileName, e.getMessage());
+        }
+    }
+
+    // households 1 to n, household 0 is the one planned interactively
+    private static void autoplanHouseholds(int households, LocalDate weekStart, int noRepeatDays, Storage db) {
+        PlanBatchGenerator generator = PlanBatchGenerator.create(db, PlanSolver.create(MealCatalog.create(db)));
+        generator.generate(1, households, weekStart, new PlanConstraints(noRepeatDays, Set.of(), Set.of(), 0));
+        System.out.println(generator.summary());
+    }
+
+    private static void importLogic(Scanner scanner, Storage db) {
+        System.out.println("Input a filename:");
+        importFile(scanner.nextLine(), RecipeImporter.DEFAULT_CHUNK_SIZE, db);
+    }
+
+    private static void importFile(String fileName, int chunkSize, Storage db) {
+        RecipeImporter importer = new RecipeImporter(db, chunkSize);
+        try {
+            importer.importFile(Path.of(fileName));
+        } catch (IOException | InvalidPathException e) {
+            System.out.printf("Unable to read %s: %s%n", fileName, e.getMessage());
+        }
+        print(out -> MealPrinter.printImportResult(out, importer.getResult()));
+    }
+
+    private static void saveLogic(Scanner scanner, Storage db) {
+        PlanKey planKey = db.getLatestPlan(PlanKey.DEFAULT_HOUSEHOLD);
+        if (planKey == null) {
             System.out.println("Unable to save. Plan your meals first.");
         } else {
             System.out.println("Input a filename:");
             String fileName = scanner.nextLine();
-            List<ShoppingListItem> shoppingList = db.createShoppingList();
-            persistShoppingListToFile(fileName, shoppingList);
-            System.out.println("Saved!");
+            try {
+                new ShoppingListExporter(db).export(List.of(planKey), Path.of(fileName));
+                System.out.println("Saved!");
+            } catch (IOException | InvalidPathException e) {
+                System.out.printf("Unable to save %s: %s%n", fileName, e.getMessage());
+            }
         }
     }
 
@@ -60,73 +261,186 @@ public class Main {
         return mealCategory;
     }
 
-    private static void planLogic(Scanner scanner, Database db) {
+    private static Weekday getWeekdayInput(Scanner scanner, String question) {
+        Weekday weekday = null;
+        do {
+            System.out.printf("%s (monday, tuesday, ..., sunday)?%n", question);
+            try {
+                weekday = Weekday.valueOf(scanner.nextLine().trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Wrong day! Choose from: monday, tuesday, wednesday, thursday, friday, " +
+                        "saturday, sunday.");
+            }
+        } while (weekday == null);
+
+        return weekday;
+    }
+
+    private static void editLogic(Scanner scanner, Storage db, MealCatalog catalog) {
+        PlanKey planKey = db.getLatestPlan(PlanKey.DEFAULT_HOUSEHOLD);
+        if (planKey == null) {
+            System.out.println("Unable to edit. Plan your meals first.");
+            return;
+        }
+        Weekday weekday = getWeekdayInput(scanner, "Which day do you want to change");
+        MealCategory mealCategory = getUserInput(scanner, "meal", "change");
+        String dayString = initCap(weekday.name());
+
+        catalog.getMealNames(mealCategory).forEach(System.out::println);
+        System.out.printf("Choose the %s for %s from the list above:%n",
+                mealCategory.toString().toLowerCase(), dayString);
+        String mealChoice = scanner.nextLine();
+        while (!isMealValid(catalog, mealCategory, mealChoice)) {
+            System.out.println("This meal doesn’t exist. Choose a meal from the list above.");
+            mealChoice = scanner.nextLine();
+        }
+
+        db.replaceSlot(planKey, new PlanLineItem(weekday, mealCategory, mealChoice)); // one upsert, not 21 rows
+        System.out.printf("The %s for %s has been changed!%n", mealCategory.toString().toLowerCase(), dayString);
+    }
 
-        db.clearPlan();
+    private static void swapLogic(Scanner scanner, Storage db) {
+        PlanKey planKey = db.getLatestPlan(PlanKey.DEFAULT_HOUSEHOLD);
+        if (planKey == null) {
+            System.out.println("Unable to swap. Plan your meals first.");
+            return;
+        }
+        MealCategory mealCategory = getUserInput(scanner, "meal", "swap");
+        Weekday first = getWeekdayInput(scanner, "Which day do you want to swap");
+        Weekday second = getWeekdayInput(scanner, "With which day");
+
+        db.swapSlots(planKey, mealCategory, first, second);
+        System.out.printf("The %s of %s and %s have been swapped!%n", mealCategory.toString().toLowerCase(),
+                initCap(first.name()), initCap(second.name()));
+    }
+
+    private static void planLogic(Scanner scanner, Storage db, MealCatalog catalog) {
+        List<PlanLineItem> planLineItems = new ArrayList<>();
         for (Weekday weekday : Weekday.values()) {
             String dayString = initCap(weekday.name());
             System.out.println(dayString);
             for (MealCategory mealCategory : MealCategory.values()) {
-                List<Meal> meals = db.getMealsByCategory(mealCategory, true);
-                meals.stream().map(Meal::getMealName).forEach(System.out::println);
+                catalog.getMealNames(mealCategory).forEach(System.out::println); // sorted, loaded once per category
                 System.out.printf("Choose the %s for %s from the list above:%n",
                         mealCategory.toString().toLowerCase(), dayString);
 
                 String mealChoice = scanner.nextLine();
-                while (!isMealValid(meals, mealChoice)) {
+                while (!isMealValid(catalog, mealCategory, mealChoice)) {
                     System.out.println("This meal doesn’t exist. Choose a meal from the list above.");
                     mealChoice = scanner.nextLine();
                 }
-                db.persistPlanLineItem(mealCategory, mealChoice, weekday);
+                planLineItems.add(new PlanLineItem(weekday, mealCategory, mealChoice));
             }
 
             System.out.printf("Yeah! We planned the meals for %s.%n%n", dayString);
         }
 
-        printPlan(db);
+        PlanKey planKey = PlanKey.currentWeek(PlanKey.DEFAULT_HOUSEHOLD);
+        db.persistPlan(planKey, planLineItems); // whole week in one transaction, replacing the previous plan
+        print(out -> MealPrinter.printPlan(out, db.getMealPlan(planKey)));
     }
 
-    public static boolean isMealValid(List<Meal> meals, String mealChoice) {
-        return meals.stream().map(Meal::getMealName).anyMatch(m -> m.equals(mealChoice));
+    private static void autoplanLogic(Scanner scanner, Storage db, MealCatalog catalog) {
+        int noRepeatDays;
+        while (true) {
+            System.out.println("Input the number of days before a meal may repeat (0 for no limit):");
+            try {
+                noRepeatDays = Integer.parseInt(scanner.nextLine().trim());
+                if (noRepeatDays >= 0) {
+                    break;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+            System.out.println("Wrong format. Use a number!");
+        }
+        System.out.println("Input the required ingredients (comma separated, empty for none):");
+        Set<String> required = parseIngredientSet(scanner.nextLine());
+        System.out.println("Input the excluded ingredients (comma separated, empty for none):");
+        Set<String> excluded = parseIngredientSet(scanner.nextLine());
+
+        PlanSolution solution = PlanSolver.create(catalog)
+                .solve(new PlanConstraints(noRepeatDays, required, excluded, System.nanoTime()));
+        if (solution == null) {
+            System.out.println("Unable to build a plan under these constraints.");
+            return;
+        }
+
+        PlanKey planKey = PlanKey.currentWeek(PlanKey.DEFAULT_HOUSEHOLD);
+        db.persistPlan(planKey, solution.getPlanLineItems());
+        print(out -> MealPrinter.printPlan(out, db.getMealPlan(planKey)));
+        System.out.printf("The shopping list has %d ingredients.%n", solution.getDistinctIngredients());
     }
 
-    private static void printPlan(Database db) {
-        // print format
-        // Monday
-        // Breakfast: yogurt
-        // Lunch: tomato salad
-        // Dinner: ramen
-        List<String> mealPlan = db. getMealPlan();
-        int foodIndex = 0;
-        for (Weekday weekday : Weekday.values()) {
-            System.out.println(initCap(weekday.name()));
-            for (int i = 0; i < 3; i++){
-                System.out.println(mealPlan.get(foodIndex++));
+    private static Set<String> parseIngredientSet(String input) {
+        Set<String> ingredients = new HashSet<>();
+        for (String ingredient : input.split(",")) {
+            if (!ingredient.isBlank()) {
+                ingredients.add(ingredient.trim());
+            }
+        }
+        return ingredients;
+    }
+
+    private static void searchLogic(Scanner scanner, MealIndex index) {
+        System.out.println("Input the ingredients the meal must contain (comma separated, empty for any):");
+        Set<String> required = parseIngredientSet(scanner.nextLine());
+        System.out.println("Input the ingredients the meal must not contain (comma separated, empty for none):");
+        Set<String> excluded = parseIngredientSet(scanner.nextLine());
+        System.out.println("Input the beginning of a word of the meal's name (empty for any):");
+        String namePrefix = scanner.nextLine().trim();
+
+        List<SearchHit> hits = index.search(new MealQuery(required, excluded, namePrefix));
+        print(out -> MealPrinter.printSearchHits(out, hits, MAX_PRINTED_HITS));
+    }
+
+    private static void pantryLogic(Scanner scanner, PantryMatcher pantryMatcher) {
+        System.out.println("Input the ingredients you have (comma separated):");
+        Set<String> pantry = parseIngredientSet(scanner.nextLine());
+        int maxMissing;
+        while (true) {
+            System.out.println("Input the number of ingredients a meal may lack (0 for meals you can cook now):");
+            try {
+                maxMissing = Integer.parseInt(scanner.nextLine().trim());
+                if (maxMissing >= 0) {
+                    break;
+                }
+            } catch (NumberFormatException ignored) {
             }
-            System.out.println();
+            System.out.println("Wrong format. Use a number!");
         }
+
+        List<PantryMatch> matches = pantryMatcher.match(pantry, maxMissing);
+        print(out -> MealPrinter.printPantryMatches(out, matches, MAX_PRINTED_HITS));
+    }
+
+    public static boolean isMealValid(MealCatalog catalog, MealCategory mealCategory, String mealChoice) {
+        return catalog.findMeal(mealCategory, mealChoice) != null;
     }
 
-    private static void showLogic(Scanner scanner, Database db) {
+    private static void showLogic(Scanner scanner, Storage db) {
         MealCategory mealCategory = getUserInput(scanner, "category", "print");
+        print(out -> MealPrinter.showMeals(out, db, mealCategory)); // printed as the meals are read
+    }
 
-        List<Meal> mealsFound = db.getMealsByCategory(mealCategory, false);
-        if (mealsFound.isEmpty()) {
-            System.out.println("No meals found.");
-        } else {
-            System.out.printf("Category: %s%n", mealCategory.toString().toLowerCase());
-            mealsFound.forEach(System.out::println);
+    // one buffer per command instead of System.out's flush on every line, flushed before the next prompt
+    private static void print(Consumer<PrintWriter> printer) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8), 1 << 16));
+        try {
+            printer.accept(out);
+        } finally {
+            out.flush();
         }
     }
 
-    private static void addLogic(Scanner scanner, Database db) {
+    private static void addLogic(Scanner scanner, Storage db) {
         MealCategory mealCategory = getUserInput(scanner, "meal", "add");
 
         String mealName;
         while (true) {
             System.out.println("Input the meal's name:");
             mealName = scanner.nextLine();
-            if (!mealName.matches("[a-zA-Z]+\\s*[a-zA-Z]*")) {
+            if (!isValidMealName(mealName)) {
                 System.out.println("Wrong format. Use letters only!");
             } else {
                 break;
@@ -137,14 +451,17 @@ public class Main {
         while (true) {
             System.out.println("Input the ingredients:");
             mealIngredients = scanner.nextLine();
-            if (!mealIngredients.matches("([a-zA-Z][a-zA-Z ]*,\\s*)*[a-zA-Z][a-zA-Z ]+")) {
+            if (!isValidIngredients(mealIngredients)) {
                 System.out.println("Wrong format. Use letters only!");
             } else {
                 break;
             }
         }
 
-        db.persistMeal(new Meal(mealCategory, mealName, mealIngredients));
-        System.out.println("The meal has been added!");
+        if (db.persistMeal(new Meal(mealCategory, mealName, mealIngredients))) {
+            System.out.println("The meal has been added!");
+        } else {
+            System.out.println("A meal with this name already exists.");
+        }
     }
 }
\ No newline at end of file
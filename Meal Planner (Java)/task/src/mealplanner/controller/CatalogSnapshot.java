@@ -0,0 +1,307 @@
+package mealplanner.controller;
+
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.model.Unit;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only binary snapshot of the meal catalog, read through a memory mapping: opening it costs one
+ * {@code mmap}, and the meals stay in the page cache instead of the heap.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * header       magic, version, per category: first meal record, meal count, then the start of the
+ *              listing, ingredient and string sections
+ * meals        per category sorted by the UTF-8 bytes of the name: name offset, first ingredient record,
+ *              ingredient count (12 bytes)
+ * listing      per category, the meal record indexes in the order the storage sorts the names (4 bytes)
+ * ingredients  ingredient id, name offset, amount, unit ordinal (20 bytes)
+ * strings      length and UTF-8 bytes, every name stored once
+ * </pre>
+ * A meal is found by binary search on the mapped bytes without decoding any name but the query's, and only
+ * then built as a {@link Meal}. Listing the names decodes nothing but the names, in the storage's order (the
+ * database collation, for PostgreSQL), so a category lists the same from the snapshot as from the storage.
+ * <p>
+ * The snapshot is written once, from the storage, into a temporary file that then replaces the previous
+ * snapshot; it doesn't change afterwards.
+ */
+public class CatalogSnapshot {
+    private static final int MAGIC = 0x4d43534e; // "MCSN"
+    private static final int FORMAT_VERSION = 2;
+    private static final int CATEGORIES = MealCategory.values().length;
+    private static final int HEADER_SIZE = Integer.BYTES * (2 + 2 * CATEGORIES + 3);
+    private static final int MEAL_RECORD = 12;
+    private static final int LISTING_RECORD = 4;
+    private static final int INGREDIENT_RECORD = 20;
+
+    private final MappedByteBuffer buffer;
+    private final int[] firstMeal = new int[CATEGORIES];
+    private final int[] mealCount = new int[CATEGORIES];
+    private final int listingStart;
+    private final int ingredientsStart;
+    private final int stringsStart;
+
+    private CatalogSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a meal catalog snapshot");
+        }
+        if (buffer.getInt(Integer.BYTES) != FORMAT_VERSION) {
+            throw new IOException("Meal catalog snapshot of an unsupported version");
+        }
+        int position = Integer.BYTES * 2;
+        for (int category = 0; category < CATEGORIES; category++) {
+            firstMeal[category] = buffer.getInt(position);
+            mealCount[category] = buffer.getInt(position + Integer.BYTES);
+            position += Integer.BYTES * 2;
+        }
+        listingStart = buffer.getInt(position);
+        ingredientsStart = buffer.getInt(position + Integer.BYTES);
+        stringsStart = buffer.getInt(position + Integer.BYTES * 2);
+    }
+
+    public static CatalogSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new CatalogSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int size(MealCategory category) {
+        return mealCount[category.ordinal()];
+    }
+
+    /**
+     * @param index position in the storage's order of the names, from 0 to {@link #size} - 1
+     */
+    public String mealName(MealCategory category, int index) {
+        Objects.checkIndex(index, mealCount[category.ordinal()]);
+        int listed = buffer.getInt(listingStart + (firstListed(category) + index) * LISTING_RECORD);
+        return readString(buffer.getInt(mealRecord(category, listed)));
+    }
+
+    /**
+     * @return the meal names of the category in the storage's order, each decoded on access, not to be modified
+     */
+    public List<String> getMealNames(MealCategory category) {
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return mealName(category, index);
+            }
+
+            @Override
+            public int size() {
+                return mealCount[category.ordinal()];
+            }
+        };
+    }
+
+    /**
+     * @return the meal with the given name in the category, or null if there is none
+     */
+    public Meal findMeal(MealCategory category, String mealName) {
+        byte[] wanted = mealName.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = mealCount[category.ordinal()] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareName(mealRecord(category, middle), wanted);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return readMeal(category, middle);
+            }
+        }
+        return null;
+    }
+
+    private int mealRecord(MealCategory category, int index) {
+        return firstMeal[category.ordinal()] + index * MEAL_RECORD;
+    }
+
+    // the listing runs parallel to the meal records, one entry per meal
+    private int firstListed(MealCategory category) {
+        return (firstMeal[category.ordinal()] - HEADER_SIZE) / MEAL_RECORD;
+    }
+
+    // compares the stored name with the wanted bytes as unsigned bytes, the order the names were sorted in
+    private int compareName(int record, byte[] wanted) {
+        int string = stringsStart + buffer.getInt(record);
+        int length = buffer.getInt(string);
+        int common = Math.min(length, wanted.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Byte.toUnsignedInt(buffer.get(string + Integer.BYTES + i))
+                    - Byte.toUnsignedInt(wanted[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return length - wanted.length;
+    }
+
+    private Meal readMeal(MealCategory category, int index) {
+        int record = mealRecord(category, index);
+        String name = readString(buffer.getInt(record));
+        int firstIngredient = buffer.getInt(record + Integer.BYTES);
+        int count = buffer.getInt(record + Integer.BYTES * 2);
+        String[] ingredients = new String[count];
+        int[] ids = new int[count];
+        double[] amounts = new double[count];
+        Unit[] units = new Unit[count];
+        for (int i = 0; i < count; i++) {
+            int ingredient = ingredientsStart + (firstIngredient + i) * INGREDIENT_RECORD;
+            ids[i] = buffer.getInt(ingredient);
+            ingredients[i] = readString(buffer.getInt(ingredient + Integer.BYTES));
+            amounts[i] = buffer.getDouble(ingredient + Integer.BYTES * 2);
+            units[i] = Unit.values()[buffer.getInt(ingredient + Integer.BYTES * 2 + Double.BYTES)];
+        }
+        // -1 marks meals written without dictionary ids
+        return new Meal(category, name, ingredients, count > 0 && ids[0] < 0 ? null : ids, amounts, units);
+    }
+
+    private String readString(int offset) {
+        int string = stringsStart + offset;
+        byte[] bytes = new byte[buffer.getInt(string)];
+        buffer.get(string + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a snapshot of every category of the repository to the file, replacing it atomically.
+     *
+     * @return the number of meals written
+     */
+    public static long write(MealRepository repository, Path target) throws IOException {
+        List<List<Meal>> categories = new ArrayList<>(CATEGORIES); // in record order, by UTF-8 bytes
+        List<int[]> listings = new ArrayList<>(CATEGORIES); // record indexes in the storage's order
+        StringTable strings = new StringTable();
+        long meals = 0;
+        long ingredientRecords = 0;
+        for (MealCategory category : MealCategory.values()) {
+            List<Meal> stored = repository.getMealsByCategory(category, true);
+            byte[][] names = new byte[stored.size()][];
+            Integer[] order = new Integer[stored.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = stored.get(i).getMealName().getBytes(StandardCharsets.UTF_8);
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(names[a], names[b]));
+            List<Meal> sorted = new ArrayList<>(stored.size());
+            int[] listing = new int[stored.size()];
+            for (int record = 0; record < order.length; record++) {
+                sorted.add(stored.get(order[record]));
+                listing[order[record]] = record;
+            }
+            categories.add(sorted);
+            listings.add(listing);
+            meals += sorted.size();
+            for (Meal meal : sorted) {
+                strings.offsetOf(meal.getMealName());
+                for (String ingredient : meal.getMealIngredients()) {
+                    strings.offsetOf(ingredient);
+                }
+                ingredientRecords += meal.getMealIngredients().length;
+            }
+        }
+
+        long listingStart = HEADER_SIZE + meals * MEAL_RECORD;
+        long ingredientsStart = listingStart + meals * LISTING_RECORD;
+        long stringsStart = ingredientsStart + ingredientRecords * INGREDIENT_RECORD;
+        if (stringsStart + strings.bytes.size() > Integer.MAX_VALUE) {
+            throw new IOException("The catalog is too large for a snapshot");
+        }
+
+        Path absoluteTarget = target.toAbsolutePath();
+        // unique per writer, concurrent snapshots of the same target don't overwrite each other's file
+        Path temporary = Files.createTempFile(absoluteTarget.getParent(), "." + absoluteTarget.getFileName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                long mealRecord = HEADER_SIZE;
+                for (List<Meal> category : categories) {
+                    out.writeInt((int) mealRecord);
+                    out.writeInt(category.size());
+                    mealRecord += (long) category.size() * MEAL_RECORD;
+                }
+                out.writeInt((int) listingStart);
+                out.writeInt((int) ingredientsStart);
+                out.writeInt((int) stringsStart);
+
+                int firstIngredient = 0;
+                for (List<Meal> category : categories) {
+                    for (Meal meal : category) {
+                        out.writeInt(strings.offsetOf(meal.getMealName()));
+                        out.writeInt(firstIngredient);
+                        out.writeInt(meal.getMealIngredients().length);
+                        firstIngredient += meal.getMealIngredients().length;
+                    }
+                }
+                for (int[] listing : listings) {
+                    for (int record : listing) {
+                        out.writeInt(record);
+                    }
+                }
+                for (List<Meal> category : categories) {
+                    for (Meal meal : category) {
+                        String[] ingredients = meal.getMealIngredients();
+                        int[] ids = meal.getIngredientIds();
+                        for (int i = 0; i < ingredients.length; i++) {
+                            out.writeInt(ids != null ? ids[i] : -1);
+                            out.writeInt(strings.offsetOf(ingredients[i]));
+                            out.writeDouble(meal.getAmounts()[i]);
+                            out.writeInt(meal.getUnits()[i].ordinal());
+                        }
+                    }
+                }
+                strings.bytes.writeTo(out);
+            }
+            try {
+                Files.move(temporary, absoluteTarget, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary); // only left when writing or moving failed
+        }
+        return meals;
+    }
+
+    private static class StringTable {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final Map<String, Integer> offsets = new HashMap<>();
+
+        private int offsetOf(String value) {
+            Integer offset = offsets.get(value);
+            if (offset != null) {
+                return offset;
+            }
+            offset = bytes.size();
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            bytes.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(encoded.length).array());
+            bytes.writeBytes(encoded);
+            offsets.put(value, offset);
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package mealplanner.controller;
+
+import mealplanner.metrics.LatencyMetric;
+import mealplanner.metrics.MetricsRegistry;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Bounded JDBC connection pool. Connections handed out are proxies: closing one returns the physical
+ * connection to the pool instead of closing the socket.
+ * <p>
+ * Connections idle for a while are validated before reuse, connections idle longer than the idle timeout
+ * are evicted (down to the minimum idle count), and connections held longer than the leak detection
+ * threshold are reported together with the stack trace of the code that borrowed them.
+ * <p>
+ * Each physical connection keeps its own {@link StatementCache}, so every SQL shape is parsed and planned
+ * once per connection; the cache counters are exposed for the whole pool.
+ * <p>
+ * Waiting for a connection is timed as {@code pool.acquire}, and every prepared statement handed out by a pooled
+ * connection is a {@link PooledStatement} that times its executions. Pool and cache counters are published as
+ * gauges.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+    private static final long VALIDATION_BYPASS_MS = 500; // connections used this recently are assumed alive
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minIdle;
+    private final long connectionTimeoutMs;
+    private final int validationTimeoutSec;
+    private final long idleTimeoutMs;
+    private final long leakDetectionThresholdMs;
+    private final int statementCacheSize;
+    private final StatementCache.Stats statementCacheStats = new StatementCache.Stats();
+    private final MetricsRegistry metrics = MetricsRegistry.global();
+    private final LatencyMetric acquireLatency = metrics.latency("pool.acquire");
+
+    private final Semaphore permits; // one permit per connection that may exist, idle or borrowed
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, int maxSize, int minIdle,
+                          long connectionTimeoutMs, int validationTimeoutSec, long idleTimeoutMs,
+                          long leakDetectionThresholdMs, int statementCacheSize) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid pool size: maxSize=%d, minIdle=%d", maxSize, minIdle));
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minIdle = minIdle;
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long leakCheck = leakDetectionThresholdMs > 0 ? leakDetectionThresholdMs : Long.MAX_VALUE;
+        long period = Math.max(1000, Math.min(idleTimeoutMs, leakCheck) / 2);
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, period, period, TimeUnit.MILLISECONDS);
+
+        metrics.gauge("pool.active", this::getActiveCount);
+        metrics.gauge("pool.idle", this::getIdleCount);
+        metrics.hitRateGauges("pool.statementCache", this::getStatementCacheHits, this::getStatementCacheMisses);
+        metrics.gauge("pool.statementCache.evictions", this::getStatementCacheEvictions);
+    }
+
+    /**
+     * Builds a pool from the {@code jdbc.*} and {@code pool.*} entries of {@code db.properties}.
+     */
+    public static ConnectionPool fromProperties(Properties properties) {
+        return new ConnectionPool(
+                properties.getProperty("jdbc.url"),
+                properties.getProperty("jdbc.username"),
+                properties.getProperty("jdbc.password"),
+                Integer.parseInt(properties.getProperty("pool.maxSize", "10")),
+                Integer.parseInt(properties.getProperty("pool.minIdle", "1")),
+                Long.parseLong(properties.getProperty("pool.connectionTimeoutMs", "30000")),
+                Integer.parseInt(properties.getProperty("pool.validationTimeoutSec", "5")),
+                Long.parseLong(properties.getProperty("pool.idleTimeoutMs", "600000")),
+                Long.parseLong(properties.getProperty("pool.leakDetectionThresholdMs", "60000")),
+                Integer.parseInt(properties.getProperty("pool.statementCacheSize", "64")));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        try (LatencyMetric.Sample sample = acquireLatency.start()) {
+            try {
+                return acquire();
+            } catch (SQLException | RuntimeException e) {
+                sample.failed();
+                throw e;
+            }
+        }
+    }
+
+    private Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException(String.format("Timed out after %d ms waiting for a database connection " +
+                        "(%d in use)", connectionTimeoutMs, borrowed.size()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) { // LIFO keeps the hot connections hot
+                if (isUsable(pooled)) {
+                    break;
+                }
+                closeQuietly(pooled);
+            }
+            if (pooled == null) {
+                pooled = new PooledConnection(DriverManager.getConnection(url, user, password));
+            }
+            Connection handle = pooled.borrow();
+            borrowed.add(pooled);
+            return handle;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MS) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        try {
+            // hand the next borrower a connection in the default state
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            if (closed) {
+                closeQuietly(pooled);
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            closeQuietly(pooled); // broken connection, let the pool open a fresh one next time
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void houseKeep() {
+        long now = System.currentTimeMillis();
+
+        // idle eviction, oldest connections sit at the tail of the deque
+        PooledConnection oldest;
+        while (idle.size() > minIdle && (oldest = idle.peekLast()) != null && now - oldest.lastUsed > idleTimeoutMs) {
+            if (idle.removeLastOccurrence(oldest)) {
+                closeQuietly(oldest);
+            }
+        }
+
+        if (leakDetectionThresholdMs > 0) {
+            for (PooledConnection pooled : borrowed) {
+                if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionThresholdMs) {
+                    pooled.leakReported = true;
+                    System.err.printf("Possible connection leak: connection held for %d ms, borrowed at:%n",
+                            now - pooled.borrowedAt);
+                    pooled.borrowTrace.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(PooledConnection pooled) {
+        try {
+            pooled.statements.closeAll();
+            pooled.physical.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheStats.getHits();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheStats.getMisses();
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheStats.getEvictions();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled);
+        }
+        // borrowed connections are closed as they are returned
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile Throwable borrowTrace;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(physical, statementCacheSize, statementCacheStats);
+        }
+
+        /**
+         * Every borrow gets its own handle, so a handle closed by a previous borrower stays closed.
+         */
+        private Connection borrow() {
+            borrowedAt = System.currentTimeMillis();
+            borrowTrace = leakDetectionThresholdMs > 0 ? new Throwable("connection borrowed here") : null;
+            leakReported = false;
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new ConnectionHandle(this));
+        }
+    }
+
+    private final class ConnectionHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private volatile boolean logicallyClosed;
+
+        private ConnectionHandle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> "Pooled" + pooled.physical;
+                };
+            }
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!logicallyClosed) {
+                        logicallyClosed = true;
+                        release(pooled);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return logicallyClosed || pooled.physical.isClosed();
+                }
+                default -> {
+                    if (logicallyClosed) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    // only the plain prepareStatement(String) shape is cached, the other overloads change the statement
+                    if (method.getName().equals("prepareStatement") && args.length == 1) {
+                        return pooled.statements.prepare((String) args[0], (Connection) proxy);
+                    }
+                }
+            }
+            Object result;
+            try {
+                result = method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof PreparedStatement preparedStatement && method.getName().equals("prepareStatement")) {
+                return PooledStatement.uncached(preparedStatement, (Connection) proxy);
+            }
+            return result;
+        }
+    }
+
+    // remaining DataSource contract, the pool is configured once from db.properties
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pool credentials are fixed by db.properties");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
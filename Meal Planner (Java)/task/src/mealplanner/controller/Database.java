@@ -1,365 +1,819 @@
 package mealplanner.controller;
 
-import mealplanner.Main;
+import mealplanner.metrics.LatencyMetric;
+import mealplanner.metrics.MetricsRegistry;
 import mealplanner.model.Meal;
 import mealplanner.model.MealCategory;
-import mealplanner.model.ShoppingListItem;
+import mealplanner.model.MealVisitor;
+import mealplanner.model.PlanDelta;
+import mealplanner.model.PlanKey;
+import mealplanner.model.PlanLineItem;
+import mealplanner.model.ShoppingListVisitor;
+import mealplanner.model.Unit;
 import mealplanner.model.Weekday;
 
+import javax.sql.DataSource;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
+import java.sql.Date;
 import java.util.*;
-
-import static mealplanner.helper.Util.initCap;
-
-public class Database {
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * PostgreSQL storage backend. Connections come from a {@link ConnectionPool} configured in {@code db.properties},
+ * the schema is kept up to date by {@link SchemaMigrator}.
+ */
+public class Database implements Storage {
     private static String DB_CREATE_URL;
-    private static String DB_APP_URL;
     private static String USER;
     private static String PASSWORD;
-    private final Map<String, Integer> ingredientNameToId;
-    private int sequenceMealsId;
-    private int sequenceIngredientsId;
-    private Connection dbConnection;
-    public Database() {
+    private static final int DEFAULT_INGREDIENT_CACHE_SIZE = 100_000;
+    private static final int SHOPPING_LIST_FETCH_SIZE = 1000;
+    private static final int SHOW_PAGE_SIZE = 500;
+    private static final int SHOW_FETCH_SIZE = 1000;
+    private static final int PLAN_SLOTS = Weekday.values().length * MealCategory.values().length;
+    private final IngredientDictionary ingredientDictionary;
+    private final SequenceAllocator mealIdSequence = new SequenceAllocator("meal_id_seq");
+    private final SequenceAllocator ingredientIdSequence = new SequenceAllocator("ingredient_id_seq");
+    private final DataSource dataSource;
+    private final Properties settings;
+    private final List<Consumer<List<Meal>>> mealListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<List<PlanDelta>>> planListeners = new CopyOnWriteArrayList<>();
+    private final MetricsRegistry metrics = MetricsRegistry.global();
+    private ScheduledExecutorService metricsDump;
+    private PrintStream metricsDumpOut;
+
+    /**
+     * Connects with the {@code jdbc.*} and {@code pool.*} settings, see {@link Storage#open()}.
+     */
+    Database(Properties properties) {
+        this(ConnectionPool.fromProperties(properties), properties);
+        DB_CREATE_URL = properties.getProperty("jdbc.createurl");
+        USER = properties.getProperty("jdbc.username");
+        PASSWORD = properties.getProperty("jdbc.password");
+    }
 
-        try (InputStream inputStream = Main.class.getResourceAsStream("/db.properties")) {
-            Properties properties = new Properties();
-            properties.load(inputStream);
+    /**
+     * Runs the application on an externally managed data source, e.g. a differently tuned pool.
+     * The application database itself is expected to exist; {@link #initDbStructures()} only creates
+     * it when the connection settings were read from {@code db.properties}.
+     */
+    public Database(DataSource dataSource) {
+        this(dataSource, new Properties());
+    }
 
-            DB_CREATE_URL = properties.getProperty("jdbc.createurl");
-            DB_APP_URL = properties.getProperty("jdbc.url");
-            USER = properties.getProperty("jdbc.username");
-            PASSWORD = properties.getProperty("jdbc.password");
+    private Database(DataSource dataSource, Properties settings) {
+        this.dataSource = dataSource;
+        this.settings = settings;
+        this.ingredientDictionary = new IngredientDictionary(Integer.parseInt(
+                getSetting("cache.ingredients.maxSize", String.valueOf(DEFAULT_INGREDIENT_CACHE_SIZE))));
+        metrics.hitRateGauges("cache.ingredients", ingredientDictionary::getHits, ingredientDictionary::getMisses);
+        metrics.gauge("cache.ingredients.size", ingredientDictionary::size);
+        startMetrics();
+    }
 
-            dbConnection = DriverManager.getConnection(DB_CREATE_URL, USER, PASSWORD);
-        } catch (SQLException | IOException e) {
-            System.out.println("Database connection error, application shutting down.");
-            e.printStackTrace();
-            System.exit(1);
+    /**
+     * Publishes the metrics through JMX unless {@code metrics.jmx} is false, and dumps them every
+     * {@code metrics.dumpIntervalSeconds} to {@code metrics.dumpFile}, or to standard error when no file is set.
+     */
+    private void startMetrics() {
+        if (Boolean.parseBoolean(getSetting("metrics.jmx", "true"))) {
+            metrics.registerMBean();
         }
+        long dumpInterval = Long.parseLong(getSetting("metrics.dumpIntervalSeconds", "0"));
+        if (dumpInterval <= 0) {
+            return;
+        }
+        String dumpFile = getSetting("metrics.dumpFile", "");
+        try {
+            metricsDumpOut = dumpFile.isBlank() ? System.err : new PrintStream(Files.newOutputStream(Path.of(dumpFile),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), true, StandardCharsets.UTF_8);
+            metricsDump = metrics.startPeriodicDump(dumpInterval, metricsDumpOut);
+        } catch (IOException e) {
+            System.err.println("Unable to open metrics dump file " + dumpFile + ": " + e.getMessage());
+        }
+    }
 
-        ingredientNameToId = new HashMap<>();
+    private LatencyMetric.Sample time(String method) {
+        return metrics.latency("Database." + method).start();
     }
 
-    private void createAppDatabase() {
-        try {
-            Statement statement = dbConnection.createStatement();
+    /**
+     * @return the {@code db.properties} entry, or the default when absent
+     */
+    @Override
+    public String getSetting(String key, String defaultValue) {
+        return settings.getProperty(key, defaultValue);
+    }
 
-            ResultSet resultSet = statement.executeQuery("select from pg_database where datname = 'meals_db'");
-            if (!resultSet.isBeforeFirst()) { // check if result set is empty
-                statement.executeUpdate("create database meals_db");
-            }
+    /**
+     * Registers a callback invoked with every batch of meals after it has been committed.
+     */
+    @Override
+    public void addMealListener(Consumer<List<Meal>> listener) {
+        mealListeners.add(listener);
+    }
 
-            statement.close();
-            dbConnection.close();
-        } catch (SQLException e) {
-            System.out.println("Error while creating application database.");
-            e.printStackTrace();
-            System.exit(1);
-        }
+    /**
+     * Registers a callback invoked with the meal changes of every plan update after it has been committed.
+     */
+    @Override
+    public void addPlanListener(Consumer<List<PlanDelta>> listener) {
+        planListeners.add(listener);
     }
 
-    private void createAppTables() {
-        try {
-            dbConnection = DriverManager.getConnection(DB_APP_URL, USER, PASSWORD);
-            Statement statement = dbConnection.createStatement();
-            // meals: category (varchar), meal (varchar), meal_id (integer)
-            statement.executeUpdate("create table if not exists meals (" +
-                    "category varchar(1024) NOT NULL," +
-                    "meal varchar(1024) NOT NULL," +
-                    "meal_id integer" +
-                    ")");
-            statement.close();
-
-            statement = dbConnection.createStatement();
-            // ingredients: ingredient (varchar), ingredient_id (integer), meal_id (integer)
-            statement.executeUpdate("create table if not exists ingredients (" +
-                    "ingredient varchar(1024) NOT NULL," +
-                    "ingredient_id integer," +
-                    "meal_id integer" +
-                    ")");
-            statement.close();
-
-            statement = dbConnection.createStatement();
-            // plan: category (integer), meal (varchar), meal_id (integer), weekday
-            // normalized poorly, however, this is the spec
-            statement.executeUpdate("create table if not exists plan (" +
-                    "category integer NOT NULL," + // facilitates less # of DB calls + easier sort than varchar-based implementation
-                    "meal varchar(1024) NOT NULL," +
-                    "meal_id integer," +
-                    "weekday integer" +
-                    ")");
+    private void createAppDatabase() throws SQLException {
+        // bootstrap connection to the maintenance database, not pooled: it is needed exactly once
+        try (Connection connection = DriverManager.getConnection(DB_CREATE_URL, USER, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("create database meals_db");
         } catch (SQLException e) {
-            System.out.println("Error while creating application database tables. Application shutting down.");
-            e.printStackTrace();
-            System.exit(1);
+            if (!"42P04".equals(e.getSQLState())) { // duplicate_database: another process was faster
+                throw e;
+            }
         }
     }
 
-    public void initSequences() {
-        try {
-            Statement statement = dbConnection.createStatement();
-            ResultSet resultSet = statement.executeQuery("select max(meal_id) from meals");
-            if (!resultSet.isBeforeFirst()) { // check if result set is empty
-                sequenceMealsId = 0;
-            } else {
-                resultSet.next();
-                sequenceMealsId = resultSet.getInt(1);
-            }
-            statement.close();
-
-            statement = dbConnection.createStatement();
-            resultSet = statement.executeQuery("select max(ingredient_id) from ingredients");
-            if (!resultSet.isBeforeFirst()) { // check if result set is empty
-                sequenceIngredientsId = 0;
-            } else {
-                resultSet.next();
-                sequenceIngredientsId = resultSet.getInt(1);
-            }
-            statement.close();
-        } catch (SQLException e) {
-            System.out.println("Error while initializing in-memory sequences. Application shutting down.");
-            e.printStackTrace();
-            System.exit(1);
+    private void migrateSchema() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            new SchemaMigrator().migrate(connection);
         }
     }
 
+    @Override
     public void initDbStructures() {
-        createAppDatabase();
-        createAppTables();
-        initSequences();
-        initIngredientCache();
-    }
-
-    private void initIngredientCache() {
-        try {
-            dbConnection = DriverManager.getConnection(DB_APP_URL, USER, PASSWORD);
-            Statement statement = dbConnection.createStatement();
-            ResultSet resultSet = statement.executeQuery("select ingredient, ingredient_id from ingredients");
-            if (resultSet.isBeforeFirst()) { // if result set is NOT empty
-                while (resultSet.next()) {
-                    ingredientNameToId.put(resultSet.getString(1), resultSet.getInt(2));
+        try (LatencyMetric.Sample sample = time("initDbStructures")) {
+            try {
+                migrateSchema();
+            } catch (SQLException e) {
+                if (!"3D000".equals(e.getSQLState()) || DB_CREATE_URL == null) {
+                    sample.failed();
+                    throw e;
                 }
+                // invalid_catalog_name: first start, the application database doesn't exist yet
+                createAppDatabase();
+                migrateSchema();
             }
-            statement.close();
         } catch (SQLException e) {
-            System.out.println("Error while rebuilding in-memory ingredient cache.");
-            e.printStackTrace();
-            System.exit(1);
+            throw new StorageException("Error while creating application database tables. Application shutting down.", e);
         }
     }
 
-    public void persistMeal(Meal meal) {
-        try {
-            dbConnection.setAutoCommit(false);
-            String sql = "insert into meals (category, meal, meal_id) values (?, ?, ?)";
-            PreparedStatement preparedStatement = dbConnection.prepareStatement(sql);
-            preparedStatement.setString(1, meal.getMealCategory().toString().toLowerCase());
-            preparedStatement.setString(2, meal.getMealName());
-            preparedStatement.setInt(3, nextMealId());
-            preparedStatement.executeUpdate();
+    /**
+     * Writes the meals and all their ingredients in one transaction, using one statement for the meal rows
+     * and one batch for the ingredient rows. A meal whose name is taken, by another process as well, or
+     * repeated in the list is skipped and the rest are stored.
+     *
+     * @return names of the skipped meals
+     */
+    @Override
+    public List<String> persistMeals(List<Meal> meals) {
+        List<Meal> stored = new ArrayList<>(meals.size());
+        List<String> skipped = new ArrayList<>();
+        try (LatencyMetric.Sample sample = time("persistMeals");
+             Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            String sql = "insert into meals (category, meal, meal_id) " +
+                    "select m.category, m.meal, m.meal_id from unnest(?, ?, ?) as m(category, meal, meal_id) " +
+                    "on conflict (meal) do nothing returning meal_id";
+            try (PreparedStatement preparedStatement = PooledStatement.prepare(connection, "insertMeals", sql)) {
+                String[] categories = new String[meals.size()];
+                String[] names = new String[meals.size()];
+                Integer[] mealIds = new Integer[meals.size()];
+                for (int i = 0; i < mealIds.length; i++) {
+                    categories[i] = meals.get(i).getMealCategory().toString().toLowerCase();
+                    names[i] = meals.get(i).getMealName();
+                    mealIds[i] = mealIdSequence.nextId(connection);
+                }
+                preparedStatement.setArray(1, connection.createArrayOf("varchar", categories));
+                preparedStatement.setArray(2, connection.createArrayOf("varchar", names));
+                preparedStatement.setArray(3, connection.createArrayOf("int4", mealIds));
+                Set<Integer> insertedIds = new HashSet<>();
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        insertedIds.add(resultSet.getInt(1));
+                    }
+                }
 
-            try {
-                persistIngredients(meal.getMealIngredients(), sequenceMealsId);
-                dbConnection.commit();
+                int[] storedIds = new int[insertedIds.size()];
+                for (int i = 0; i < mealIds.length; i++) {
+                    if (insertedIds.contains(mealIds[i])) {
+                        storedIds[stored.size()] = mealIds[i];
+                        stored.add(meals.get(i));
+                    } else {
+                        skipped.add(names[i]); // its id is left unused, a gap in the sequence
+                    }
+                }
+                Map<String, Integer> resolvedIngredients = persistIngredients(connection, stored, storedIds);
+                connection.commit();
+                // write-through after commit only, a rolled back name would point to a missing row
+                ingredientDictionary.putAll(resolvedIngredients);
+                sample.rows(stored.size());
             } catch (SQLException e) {
-                dbConnection.rollback();
-                System.out.println("TX error:");
-                e.printStackTrace();
+                sample.failed();
+                connection.rollback();
+                // the failure may come from a stale cached id, e.g. the schema was rebuilt by another process
+                meals.forEach(meal -> ingredientDictionary.invalidate(Arrays.asList(meal.getMealIngredients())));
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
-            preparedStatement.close();
-            dbConnection.setAutoCommit(true);
         } catch (SQLException e) {
-            System.out.println("Error while writing meal data to database. Application shutting down.");
-            e.printStackTrace();
-            System.exit(1);
+            throw new StorageException("Error while writing meal data to database. Application shutting down.", e);
+        }
+        if (!stored.isEmpty()) {
+            mealListeners.forEach(listener -> listener.accept(stored));
         }
+        return skipped;
     }
 
-    private void persistIngredients(String[] ingredients, int mealId) throws SQLException {
-        String sql = "insert into ingredients (ingredient, ingredient_id, meal_id) values (?, ?, ?)";
-        PreparedStatement preparedStatement = dbConnection.prepareStatement(sql);
-        for (String ingredient : ingredients) {
-            if (!ingredientNameToId.containsKey(ingredient)) {
-                ingredientNameToId.put(ingredient, nextIngredientId());
+    /**
+     * @return ids of the ingredient names that were not in the dictionary cache
+     */
+    private Map<String, Integer> persistIngredients(Connection connection, List<Meal> meals, int[] mealIds)
+            throws SQLException {
+        // one dictionary lookup per distinct name, the rest is resolved in the database
+        Map<String, Integer> ingredientIds = new HashMap<>();
+        Set<String> uncached = new LinkedHashSet<>();
+        for (Meal meal : meals) {
+            for (String ingredient : meal.getMealIngredients()) {
+                if (!ingredientIds.containsKey(ingredient) && !uncached.contains(ingredient)) {
+                    Integer id = ingredientDictionary.idOf(ingredient);
+                    if (id == null) {
+                        uncached.add(ingredient);
+                    } else {
+                        ingredientIds.put(ingredient, id);
+                    }
+                }
             }
-            preparedStatement.setString(1, ingredient);
-            preparedStatement.setInt(2, ingredientNameToId.get(ingredient));
-            preparedStatement.setInt(3, mealId);
-            preparedStatement.executeUpdate();
         }
-        preparedStatement.close();
+        Map<String, Integer> resolvedIngredients = resolveIngredients(connection, uncached);
+        ingredientIds.putAll(resolvedIngredients);
+
+        String sql = "insert into ingredients (meal_id, position, ingredient_id, amount, unit) values (?, ?, ?, ?, ?)";
+        try (PreparedStatement preparedStatement = PooledStatement.prepare(connection, "insertIngredients", sql)) {
+            for (int i = 0; i < mealIds.length; i++) {
+                String[] ingredients = meals.get(i).getMealIngredients();
+                double[] amounts = meals.get(i).getAmounts();
+                Unit[] units = meals.get(i).getUnits();
+                for (int position = 0; position < ingredients.length; position++) {
+                    preparedStatement.setInt(1, mealIds[i]);
+                    preparedStatement.setInt(2, position + 1);
+                    preparedStatement.setInt(3, ingredientIds.get(ingredients[position]));
+                    preparedStatement.setDouble(4, amounts[position]);
+                    preparedStatement.setString(5, units[position].getSymbol());
+                    preparedStatement.addBatch();
+                }
+            }
+            // single round trip, sent as multi-row inserts with reWriteBatchedInserts=true
+            preparedStatement.executeBatch();
+        }
+        return resolvedIngredients;
     }
 
-    private int nextMealId() {
-        return ++sequenceMealsId;
+    /**
+     * Looks up ingredient names missing from the dictionary cache and adds the ones that are new to
+     * {@code ingredient_names}. Another process may add the same name meanwhile, its id wins.
+     */
+    private Map<String, Integer> resolveIngredients(Connection connection, Set<String> uncached)
+            throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        if (uncached.isEmpty()) {
+            return ids;
+        }
+
+        selectIngredientIds(connection, uncached, ids);
+        List<String> unknown = uncached.stream().filter(name -> !ids.containsKey(name)).toList();
+        if (unknown.isEmpty()) {
+            return ids;
+        }
+        String sql = "insert into ingredient_names (ingredient_id, ingredient) values (?, ?) " +
+                "on conflict (ingredient) do nothing";
+        try (PreparedStatement preparedStatement = PooledStatement.prepare(connection, "insertIngredientNames", sql)) {
+            for (String ingredient : unknown) {
+                preparedStatement.setInt(1, ingredientIdSequence.nextId(connection));
+                preparedStatement.setString(2, ingredient);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        }
+        selectIngredientIds(connection, unknown, ids);
+        return ids;
     }
 
-    private int nextIngredientId() {
-        return  ++sequenceIngredientsId;
+    private static void selectIngredientIds(Connection connection, Collection<String> names, Map<String, Integer> ids)
+            throws SQLException {
+        String sql = "select ingredient, ingredient_id from ingredient_names where ingredient = any(?)";
+        try (PreparedStatement preparedStatement = PooledStatement.prepare(connection, "selectIngredientIds", sql)) {
+            preparedStatement.setArray(1, connection.createArrayOf("varchar", names.toArray()));
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.put(resultSet.getString(1), resultSet.getInt(2));
+                }
+            }
+        }
     }
 
+    @Override
     public List<Meal> getMealsByCategory(MealCategory category, boolean sort) {
         List<Meal> meals = new ArrayList<>();
-        try {
-            String sql = "select category, meal, meal_id from meals where category = ?";
-            if (sort) {
-                sql += " order by meal";
-            }
-            PreparedStatement preparedStatement = dbConnection.prepareStatement(sql);
+        // one round trip: meals joined with their ingredients, rows of the same meal arrive adjacent
+        String sql = "select m.meal, m.meal_id, i.ingredient_id, n.ingredient, i.amount, i.unit " +
+                "from meals m " +
+                "left join ingredients i using (meal_id) " +
+                "left join ingredient_names n using (ingredient_id) " +
+                "where m.category = ? " +
+                "order by " + (sort ? "m.meal, " : "") + "m.meal_id, i.position";
+        try (LatencyMetric.Sample sample = time("getMealsByCategory");
+             Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = PooledStatement.prepare(connection, "selectMeals", sql)) {
             preparedStatement.setString(1, category.toString().toLowerCase());
+            readMeals(preparedStatement.executeQuery(), category, meals::add);
+            sample.rows(meals.size());
+        } catch (SQLException | IOException e) { // adding to the list doesn't throw IOException
+            throw new StorageException("Error while reading meals from the database.", e);
+        }
+        return meals;
+    }
 
-            ResultSet resultSet = preparedStatement.executeQuery();
-            while (resultSet.next()) {
-                MealCategory mealCategory = MealCategory.valueOf(resultSet.getString(1).toUpperCase());
-                String mealName = resultSet.getString(2);
-                int mealId = resultSet.getInt(3);
-                String[] mealIngredients = getIngredientsForMeal(mealId);
-                Meal meal = new Meal(mealCategory, mealName, mealIngredients);
-                meals.add(meal);
+    /**
+     * Reads the meals in keyset pages of {@value #SHOW_PAGE_SIZE}, each after the last meal id of the previous
+     * page, so every page is a range scan of the category's meal ids and holds its transaction only while the
+     * visitor works through that page. Within a page, rows come from a server-side cursor in batches.
+     */
+    @Override
+    public void streamMealsByCategory(MealCategory category, MealVisitor visitor) throws IOException {
+        String sql = "select m.meal, m.meal_id, i.ingredient_id, n.ingredient, i.amount, i.unit " +
+                "from (select meal_id, meal from meals where category = ? and meal_id > ? " +
+                "      order by meal_id limit ?) m " +
+                "left join ingredients i using (meal_id) " +
+                "left join ingredient_names n using (ingredient_id) " +
+                "order by m.meal_id, i.position";
+        try (LatencyMetric.Sample sample = time("streamMealsByCategory")) {
+            long meals = 0;
+            int lastMealId = Integer.MIN_VALUE;
+            while (true) {
+                long[] pageMeals = {0};
+                try (Connection connection = dataSource.getConnection()) {
+                    connection.setAutoCommit(false); // the driver only fetches in batches inside a transaction
+                    try (PreparedStatement preparedStatement =
+                                 PooledStatement.prepare(connection, "selectMealPage", sql)) {
+                        preparedStatement.setString(1, category.toString().toLowerCase());
+                        preparedStatement.setInt(2, lastMealId);
+                        preparedStatement.setInt(3, SHOW_PAGE_SIZE);
+                        preparedStatement.setFetchSize(SHOW_FETCH_SIZE);
+                        int pageLastMealId = readMeals(preparedStatement.executeQuery(), category, meal -> {
+                            pageMeals[0]++;
+                            visitor.visit(meal);
+                        });
+                        connection.commit();
+                        if (pageMeals[0] > 0) {
+                            lastMealId = pageLastMealId;
+                        }
+                    } finally {
+                        connection.setAutoCommit(true);
+                    }
+                }
+                meals += pageMeals[0];
+                if (pageMeals[0] < SHOW_PAGE_SIZE) {
+                    break;
+                }
             }
-            preparedStatement.close();
+            sample.rows(meals);
         } catch (SQLException e) {
-            System.out.println("Error while reading meals from the database.");
-            e.printStackTrace();
-            System.exit(1);
+            throw new StorageException("Error while reading meals from the database.", e);
         }
-        return meals;
     }
 
-    private String[] getIngredientsForMeal(int mealId) {
-        List<String> ingredients = new ArrayList<>();
-        try {
-            String sql = "select ingredient from ingredients where meal_id = ?";
-            PreparedStatement preparedStatement = dbConnection.prepareStatement(sql);
-            preparedStatement.setInt(1, mealId);
-
-            ResultSet resultSet = preparedStatement.executeQuery();
+    /**
+     * Builds meals from rows of meal, meal id, ingredient id, ingredient, amount and unit, where the rows of a
+     * meal are adjacent and a meal without ingredients has a single row of nulls. Closes the result set.
+     *
+     * @return the meal id of the last meal, unspecified if there was none
+     */
+    private int readMeals(ResultSet resultSet, MealCategory category, MealVisitor visitor)
+            throws SQLException, IOException {
+        String mealName = null;
+        int currentMealId = -1;
+        List<String> mealIngredients = new ArrayList<>();
+        // reused for every meal, copied to the meal at its exact size
+        int[] ingredientIds = new int[16];
+        double[] amounts = new double[16];
+        Unit[] units = new Unit[16];
+        try (resultSet) {
             while (resultSet.next()) {
-                ingredients.add(resultSet.getString(1));
+                int mealId = resultSet.getInt(2);
+                if (mealName == null || mealId != currentMealId) { // first row of the next meal, flush the previous one
+                    if (mealName != null) {
+                        visitor.visit(toMeal(category, mealName, mealIngredients, ingredientIds, amounts, units));
+                        mealIngredients.clear();
+                    }
+                    mealName = resultSet.getString(1);
+                    currentMealId = mealId;
+                }
+                int ingredientId = resultSet.getInt(3);
+                if (!resultSet.wasNull()) { // left join yields null for a meal without ingredients
+                    if (mealIngredients.size() == ingredientIds.length) {
+                        ingredientIds = Arrays.copyOf(ingredientIds, ingredientIds.length * 2);
+                        amounts = Arrays.copyOf(amounts, amounts.length * 2);
+                        units = Arrays.copyOf(units, units.length * 2);
+                    }
+                    ingredientIds[mealIngredients.size()] = ingredientId;
+                    amounts[mealIngredients.size()] = resultSet.getDouble(5);
+                    units[mealIngredients.size()] = Unit.forSymbol(resultSet.getString(6));
+                    String ingredient = ingredientDictionary.nameOf(ingredientId); // mostly cached, no write
+                    mealIngredients.add(ingredient != null
+                            ? ingredient
+                            : ingredientDictionary.put(ingredientId, resultSet.getString(4)));
+                }
+            }
+            if (mealName != null) {
+                visitor.visit(toMeal(category, mealName, mealIngredients, ingredientIds, amounts, units));
             }
-            preparedStatement.close();
-        } catch (SQLException e) {
-            System.out.println("Error while reading ingredients from the database.");
-            e.printStackTrace();
-            System.exit(1);
         }
-        return ingredients.toArray(new String[] {}); // create array from list // TODO consider refactoring ingredients to List to avoid these conversions
+        return currentMealId;
     }
 
+    private static Meal toMeal(MealCategory category, String mealName, List<String> ingredients, int[] ingredientIds,
+                               double[] amounts, Unit[] units) {
+        return new Meal(category, mealName, ingredients.toArray(new String[0]),
+                Arrays.copyOf(ingredientIds, ingredients.size()), Arrays.copyOf(amounts, ingredients.size()),
+                Arrays.copyOf(units, ingredients.size()));
+    }
+
+    @Override
     public void closeConnections() {
-        try {
-            dbConnection.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+        if (metricsDump != null) {
+            metricsDump.shutdownNow();
+            if (metricsDumpOut != System.err) {
+                metricsDumpOut.close();
+            }
+            metricsDump = null;
+        }
+        if (dataSource instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new StorageException("Unable to close the database connections.", e);
+            }
         }
     }
 
-    private int getIdForMeal(String meal) {
-        int mealId = -1;
-        try {
-            String sql = "select meal_id from meals where meal = ?";
-            PreparedStatement preparedStatement = dbConnection.prepareStatement(sql);
-            preparedStatement.setString(1, meal);
-            ResultSet resultSet = preparedStatement.executeQuery();
-            if (!resultSet.isBeforeFirst()) { // if result set is empty
-                preparedStatement.close();
-                throw new SQLException(String.format("meal_id: %s not in DB", meal));
+    private Map<String, Integer> getIdsForMeals(Connection connection, Collection<String> meals) throws SQLException {
+        Map<String, Integer> mealIds = new HashMap<>();
+        String sql = "select meal, meal_id from meals where meal = any(?)";
+        try (PreparedStatement preparedStatement = PooledStatement.prepare(connection, "selectMealIds", sql)) {
+            preparedStatement.setArray(1, connection.createArrayOf("varchar", meals.toArray()));
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    mealIds.put(resultSet.getString(1), resultSet.getInt(2));
+                }
+            }
+        }
+        return mealIds;
+    }
+
+    /**
+     * Replaces the given plans in one transaction. Only slots whose meal changes are written, as upserts,
+     * and slots missing from the new plan are deleted, so replanning a mostly unchanged week writes few rows.
+     */
+    @Override
+    public void persistPlans(Map<PlanKey, List<PlanLineItem>> plans) {
+        updatePlans("persistPlans", connection -> {
+            Set<String> mealNames = new HashSet<>();
+            plans.values().forEach(items -> items.forEach(item -> mealNames.add(item.getMealName())));
+            Map<String, Integer> mealIds = getIdsForMeals(connection, mealNames);
+
+            Map<PlanKey, int[]> oldSlots = lockPlans(connection, plans.keySet());
+            Map<PlanKey, int[]> newSlots = new HashMap<>();
+            for (Map.Entry<PlanKey, List<PlanLineItem>> plan : plans.entrySet()) {
+                int[] slots = new int[PLAN_SLOTS];
+                for (PlanLineItem item : plan.getValue()) {
+                    slots[slotOf(item.getWeekday(), item.getMealCategory())] = mealIdOf(mealIds, item.getMealName());
+                }
+                newSlots.put(plan.getKey(), slots);
+            }
+            return writeSlots(connection, oldSlots, newSlots);
+        });
+    }
+
+    /**
+     * Puts the meal into its weekday and category slot of the plan, leaving the other slots alone.
+     */
+    @Override
+    public void replaceSlot(PlanKey planKey, PlanLineItem item) {
+        updatePlans("replaceSlot", connection -> {
+            int mealId = mealIdOf(getIdsForMeals(connection, List.of(item.getMealName())), item.getMealName());
+            Map<PlanKey, int[]> oldSlots = lockPlans(connection, List.of(planKey));
+            int[] slots = oldSlots.get(planKey).clone();
+            slots[slotOf(item.getWeekday(), item.getMealCategory())] = mealId;
+            return writeSlots(connection, oldSlots, Map.of(planKey, slots));
+        });
+    }
+
+    /**
+     * Exchanges the meals of a category between two days of the plan.
+     */
+    @Override
+    public void swapSlots(PlanKey planKey, MealCategory category, Weekday first, Weekday second) {
+        updatePlans("swapSlots", connection -> {
+            Map<PlanKey, int[]> oldSlots = lockPlans(connection, List.of(planKey));
+            int[] slots = oldSlots.get(planKey).clone();
+            int firstSlot = slotOf(first, category);
+            int secondSlot = slotOf(second, category);
+            slots[firstSlot] = oldSlots.get(planKey)[secondSlot];
+            slots[secondSlot] = oldSlots.get(planKey)[firstSlot];
+            return writeSlots(connection, oldSlots, Map.of(planKey, slots));
+        });
+    }
+
+    private interface PlanUpdate {
+        List<PlanDelta> apply(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Runs the update in one transaction, timed under the name of the public method. The rows are the
+     * changed plans.
+     */
+    private void updatePlans(String method, PlanUpdate update) {
+        List<PlanDelta> deltas = List.of();
+        try (LatencyMetric.Sample sample = time(method);
+             Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                deltas = update.apply(connection);
+                connection.commit();
+                sample.rows(deltas.size());
+            } catch (SQLException e) {
+                sample.failed();
+                connection.rollback();
+                throw e;
             }
-            resultSet.next();
-            mealId = resultSet.getInt(1);
         } catch (SQLException e) {
-            System.out.println("Error while checking whether DB has the desired meal.");
-            e.printStackTrace();
-            System.exit(1);
+            throw new StorageException("Error while writing meal plan to DB.", e);
+        }
+        if (!deltas.isEmpty()) {
+            List<PlanDelta> committed = deltas;
+            planListeners.forEach(listener -> listener.accept(committed));
+        }
+    }
+
+    private static int slotOf(Weekday weekday, MealCategory category) {
+        return weekday.ordinal() * MealCategory.values().length + category.ordinal();
+    }
+
+    private static int mealIdOf(Map<String, Integer> mealIds, String mealName) throws SQLException {
+        Integer mealId = mealIds.get(mealName);
+        if (mealId == null) {
+            throw new SQLException(String.format("meal_id: %s not in DB", mealName));
         }
         return mealId;
     }
 
-    public void persistPlanLineItem(MealCategory category, String mealName, Weekday weekday) {
-        try {
-            // plan: category (int), meal (varchar), meal_id (integer), weekday
-            String sql = "insert into plan (category, meal, meal_id, weekday) values (?, ?, ?, ?)";
-            PreparedStatement preparedStatement = dbConnection.prepareStatement(sql);
-            preparedStatement.setInt(1, category.ordinal());
-            preparedStatement.setString(2, mealName);
-            preparedStatement.setInt(3, getIdForMeal(mealName));
-            preparedStatement.setInt(4, weekday.ordinal());
-            preparedStatement.executeUpdate();
-        } catch (SQLException e) {
-            System.out.println("Error while writing meal plan line item to DB.");
-            e.printStackTrace();
-            System.exit(1);
+    /**
+     * Reads the slots of the plans and locks them until the transaction ends. The lock is taken on the plan keys,
+     * not only on existing rows, so two transactions creating the same plan are serialized too.
+     *
+     * @return per plan the meal id of every slot, 0 for an empty slot
+     */
+    private static Map<PlanKey, int[]> lockPlans(Connection connection, Collection<PlanKey> planKeys)
+            throws SQLException {
+        // in key order, so that transactions locking overlapping sets of plans can't deadlock
+        String lockSql = "select pg_advisory_xact_lock(k.household_id, k.week_start - date '2000-01-01') " +
+                "from unnest(?, ?) as k(household_id, week_start) order by k.household_id, k.week_start";
+        try (PreparedStatement preparedStatement = PooledStatement.prepare(connection, "lockPlans", lockSql)) {
+            setPlanKeys(connection, preparedStatement, planKeys);
+            preparedStatement.executeQuery().close();
         }
+
+        Map<PlanKey, int[]> plans = new HashMap<>();
+        planKeys.forEach(planKey -> plans.put(planKey, new int[PLAN_SLOTS]));
+        String sql = "select p.household_id, p.week_start, p.weekday, p.category, p.meal_id " +
+                "from plan p join unnest(?, ?) as k(household_id, week_start) using (household_id, week_start)";
+        try (PreparedStatement preparedStatement = PooledStatement.prepare(connection, "selectPlans", sql)) {
+            setPlanKeys(connection, preparedStatement, planKeys);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    PlanKey planKey = new PlanKey(resultSet.getInt(1), resultSet.getDate(2).toLocalDate());
+                    plans.get(planKey)[slotOf(Weekday.values()[resultSet.getInt(3)],
+                            MealCategory.values()[resultSet.getInt(4)])] = resultSet.getInt(5);
+                }
+            }
+        }
+        return plans;
     }
 
-    public List<String> getMealPlan() {
-        List<String> mealPlan = new ArrayList<>();
-        try {
-            Statement statement = dbConnection.createStatement();
-            // plan: category (int), meal (varchar), meal_id (integer), weekday
-            ResultSet resultSet =
-                    statement.executeQuery("select category, meal, meal_id, weekday from plan order by weekday, category");
+    private static void setPlanKeys(Connection connection, PreparedStatement preparedStatement,
+                                    Collection<PlanKey> planKeys) throws SQLException {
+        preparedStatement.setArray(1, connection.createArrayOf("int4",
+                planKeys.stream().map(PlanKey::householdId).toArray()));
+        preparedStatement.setArray(2, connection.createArrayOf("date",
+                planKeys.stream().map(planKey -> Date.valueOf(planKey.weekStart())).toArray()));
+    }
 
-            while (resultSet.next()) {
-                mealPlan.add(String.format("%s: %s", initCap(MealCategory.values()[resultSet.getInt(1)].toString()),
-                        resultSet.getString(2)));
+    /**
+     * Upserts the slots whose meal changed and deletes the slots that were emptied, in one batch each,
+     * then adjusts the shopping lists of the plans by the changes.
+     */
+    private static List<PlanDelta> writeSlots(Connection connection, Map<PlanKey, int[]> oldSlots,
+                                              Map<PlanKey, int[]> newSlots) throws SQLException {
+        List<PlanDelta> deltas = new ArrayList<>();
+        // plan: household_id (integer), week_start (date), weekday (int), category (int), meal_id (integer)
+        String upsertSql = "insert into plan (household_id, week_start, weekday, category, meal_id) " +
+                "values (?, ?, ?, ?, ?) " +
+                "on conflict (household_id, week_start, weekday, category) do update set meal_id = excluded.meal_id";
+        String deleteSql = "delete from plan " +
+                "where household_id = ? and week_start = ? and weekday = ? and category = ?";
+        try (PreparedStatement upsert = PooledStatement.prepare(connection, "upsertSlots", upsertSql);
+             PreparedStatement delete = PooledStatement.prepare(connection, "deleteSlots", deleteSql)) {
+            int categories = MealCategory.values().length;
+            for (Map.Entry<PlanKey, int[]> plan : newSlots.entrySet()) {
+                PlanKey planKey = plan.getKey();
+                Date weekStart = Date.valueOf(planKey.weekStart());
+                int[] before = oldSlots.get(planKey);
+                int[] after = plan.getValue();
+                List<Integer> removed = new ArrayList<>();
+                List<Integer> added = new ArrayList<>();
+                for (int slot = 0; slot < PLAN_SLOTS; slot++) {
+                    if (before[slot] == after[slot]) {
+                        continue;
+                    }
+                    PreparedStatement preparedStatement = after[slot] == 0 ? delete : upsert;
+                    preparedStatement.setInt(1, planKey.householdId());
+                    preparedStatement.setDate(2, weekStart);
+                    preparedStatement.setInt(3, slot / categories);
+                    preparedStatement.setInt(4, slot % categories);
+                    if (after[slot] != 0) {
+                        preparedStatement.setInt(5, after[slot]);
+                        added.add(after[slot]);
+                    }
+                    preparedStatement.addBatch();
+                    if (before[slot] != 0) {
+                        removed.add(before[slot]);
+                    }
+                }
+                if (!removed.isEmpty() || !added.isEmpty()) {
+                    deltas.add(new PlanDelta(planKey, removed, added));
+                }
             }
-            statement.close();
-        } catch (SQLException e) {
-            System.out.println("Error while reading meal plan from the database.");
-            e.printStackTrace();
-            System.exit(1);
+            upsert.executeBatch();
+            delete.executeBatch();
         }
-        return mealPlan;
+        adjustShoppingLists(connection, deltas);
+        return deltas;
     }
 
-    public void clearPlan() {
-        try {
-            Statement statement = dbConnection.createStatement();
-            statement.executeUpdate("delete from plan");
-        } catch (SQLException e) {
-            System.out.println("Error while removing meal plan data from the database.");
-            e.printStackTrace();
-            System.exit(1);
+    /**
+     * Adds the ingredient amounts of the added meals to the plans' shopping lists and subtracts those of the removed
+     * meals, in one statement for all plans. Amounts are summed per ingredient and base unit; an ingredient whose
+     * amount drops to 0 is removed from the list.
+     */
+    private static void adjustShoppingLists(Connection connection, List<PlanDelta> deltas) throws SQLException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Integer> householdIds = new ArrayList<>();
+        List<Date> weekStarts = new ArrayList<>();
+        List<Integer> mealIds = new ArrayList<>();
+        List<Integer> changes = new ArrayList<>();
+        for (PlanDelta delta : deltas) {
+            Date weekStart = Date.valueOf(delta.planKey().weekStart());
+            for (int mealId : delta.removedMealIds()) {
+                householdIds.add(delta.planKey().householdId());
+                weekStarts.add(weekStart);
+                mealIds.add(mealId);
+                changes.add(-1);
+            }
+            for (int mealId : delta.addedMealIds()) {
+                householdIds.add(delta.planKey().householdId());
+                weekStarts.add(weekStart);
+                mealIds.add(mealId);
+                changes.add(1);
+            }
+        }
+
+        // numeric amounts: the sums are exact, an ingredient removed as often as it was added ends at exactly 0
+        String sql = "insert into shopping_list (household_id, week_start, ingredient_id, unit, amount) " +
+                "select c.household_id, c.week_start, i.ingredient_id, i.unit, sum(c.change * i.amount) " +
+                "from unnest(?, ?, ?, ?) as c(household_id, week_start, meal_id, change) " +
+                "join ingredients i using (meal_id) " +
+                "group by c.household_id, c.week_start, i.ingredient_id, i.unit " +
+                "having sum(c.change * i.amount) <> 0 " + // e.g. a swap, the ingredients stay the same
+                "on conflict (household_id, week_start, ingredient_id, unit) " +
+                "do update set amount = shopping_list.amount + excluded.amount";
+        try (PreparedStatement preparedStatement = PooledStatement.prepare(connection, "addShoppingItems", sql)) {
+            preparedStatement.setArray(1, connection.createArrayOf("int4", householdIds.toArray()));
+            preparedStatement.setArray(2, connection.createArrayOf("date", weekStarts.toArray()));
+            preparedStatement.setArray(3, connection.createArrayOf("int4", mealIds.toArray()));
+            preparedStatement.setArray(4, connection.createArrayOf("int4", changes.toArray()));
+            preparedStatement.executeUpdate();
+        }
+
+        String deleteSql = "delete from shopping_list s using unnest(?, ?) as k(household_id, week_start) " +
+                "where s.household_id = k.household_id and s.week_start = k.week_start and s.amount = 0";
+        try (PreparedStatement preparedStatement =
+                     PooledStatement.prepare(connection, "deleteShoppingItems", deleteSql)) {
+            setPlanKeys(connection, preparedStatement, deltas.stream().map(PlanDelta::planKey).toList());
+            preparedStatement.executeUpdate();
         }
     }
 
-    public boolean isPlanTableEmpty() {
-        try {
-            Statement statement = dbConnection.createStatement();
-            ResultSet resultSet = statement.executeQuery("select meal_id from plan");
-            if (!resultSet.isBeforeFirst()) { // check if result set is empty
-                statement.close();
-                return true;
+    /**
+     * @return the planned meals in weekday, category order; slots that were never planned are absent
+     */
+    @Override
+    public List<PlanLineItem> getMealPlan(PlanKey planKey) {
+        List<PlanLineItem> mealPlan = new ArrayList<>();
+        // plan: weekday (int), category (int), meal_id (integer), the meal name comes from meals
+        String sql = "select p.weekday, p.category, m.meal from plan p join meals m using (meal_id) " +
+                "where p.household_id = ? and p.week_start = ? order by p.weekday, p.category";
+        try (LatencyMetric.Sample sample = time("getMealPlan");
+             Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = PooledStatement.prepare(connection, "selectPlan", sql)) {
+            preparedStatement.setInt(1, planKey.householdId());
+            preparedStatement.setDate(2, Date.valueOf(planKey.weekStart()));
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    mealPlan.add(new PlanLineItem(Weekday.values()[resultSet.getInt(1)],
+                            MealCategory.values()[resultSet.getInt(2)], resultSet.getString(3)));
+                }
             }
-            statement.close();
+            sample.rows(mealPlan.size());
         } catch (SQLException e) {
-            System.out.println("Error while checking whether the meal plan table has any data");
-            e.printStackTrace();
-            System.exit(1);
+            throw new StorageException("Error while reading meal plan from the database.", e);
         }
-        return false;
+        return mealPlan;
     }
 
-    public List<ShoppingListItem> createShoppingList() {
-        List<ShoppingListItem> shoppingList = new ArrayList<>();
-        try {
-            Statement statement = dbConnection.createStatement();
-            ResultSet resultSet =
-                    statement.executeQuery("select ingredient, count(ingredient) from ingredients join plan using (meal_id) group by ingredient");
-            while (resultSet.next()) {
-                shoppingList.add(new ShoppingListItem(resultSet.getString(1), resultSet.getInt(2)));
+    /**
+     * @return the household's plan with the latest week, or null if the household has no plan
+     */
+    @Override
+    public PlanKey getLatestPlan(int householdId) {
+        String sql = "select max(week_start) from plan where household_id = ?";
+        try (LatencyMetric.Sample sample = time("getLatestPlan");
+             Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = PooledStatement.prepare(connection, "selectLatestPlan", sql)) {
+            preparedStatement.setInt(1, householdId);
+            Date weekStart;
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                resultSet.next();
+                weekStart = resultSet.getDate(1);
             }
-            statement.close();
+            sample.rows(weekStart == null ? 0 : 1);
+            return weekStart == null ? null : new PlanKey(householdId, weekStart.toLocalDate());
         } catch (SQLException e) {
-            System.out.println("Error while preparing shopping list.");
-            e.printStackTrace();
-            System.exit(1);
+            throw new StorageException("Error while checking whether the meal plan table has any data", e);
         }
+    }
+
+    @Override
+    public void clearPlan(PlanKey planKey) {
+        updatePlans("clearPlan", connection ->
+                writeSlots(connection, lockPlans(connection, List.of(planKey)), Map.of(planKey, new int[PLAN_SLOTS])));
+    }
 
-        return shoppingList;
+    /**
+     * Streams the combined shopping list of the plans to the visitor, one item per ingredient and unit in no
+     * particular order. Rows are fetched from the server in batches, so the list is never held in memory as a whole.
+     */
+    @Override
+    public void streamShoppingList(Collection<PlanKey> planKeys, ShoppingListVisitor visitor) throws IOException {
+        // maintained with every plan update, reading it needs neither the plan nor the ingredients table
+        String sql = "select n.ingredient, c.amount, c.unit " +
+                "from (select s.ingredient_id, s.unit, sum(s.amount) as amount " +
+                "      from shopping_list s join unnest(?, ?) as k(household_id, week_start) " +
+                "      using (household_id, week_start) " +
+                "      group by s.ingredient_id, s.unit) c " +
+                "join ingredient_names n using (ingredient_id)";
+        try (LatencyMetric.Sample sample = time("streamShoppingList");
+             Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false); // the driver only fetches in batches inside a transaction
+            try (PreparedStatement preparedStatement = PooledStatement.prepare(connection, "selectShoppingList", sql)) {
+                setPlanKeys(connection, preparedStatement, new LinkedHashSet<>(planKeys));
+                preparedStatement.setFetchSize(SHOPPING_LIST_FETCH_SIZE);
+                long items = 0;
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        visitor.visit(resultSet.getString(1), resultSet.getDouble(2),
+                                Unit.forSymbol(resultSet.getString(3)));
+                        items++;
+                    }
+                }
+                sample.rows(items);
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new StorageException("Error while preparing shopping list.", e);
+        }
     }
 }
@@ -0,0 +1,644 @@
+package mealplanner.controller;
+
+import mealplanner.metrics.LatencyMetric;
+import mealplanner.metrics.MetricsRegistry;
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.model.MealVisitor;
+import mealplanner.model.PlanDelta;
+import mealplanner.model.PlanKey;
+import mealplanner.model.PlanLineItem;
+import mealplanner.model.ShoppingListVisitor;
+import mealplanner.model.Unit;
+import mealplanner.model.Weekday;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Storage backend in a single append-only file, for running without a database server, e.g. offline or in tests.
+ * <p>
+ * Every change is appended as a few records followed by a commit record, written with one call and, unless
+ * {@code storage.sync} is false, forced to disk before the change becomes visible. On open the log is replayed
+ * into memory; records after the last intact commit, the remains of a crash mid-write, are cut off.
+ * Reads are then served from memory without any I/O. Each record is {@code length, type, payload, CRC-32}.
+ * <p>
+ * Access is serialized per store: reads share a lock, writes hold it exclusively. The file is locked against
+ * other processes while the store is open.
+ */
+public class EmbeddedStore implements Storage {
+    private static final int MAGIC = 0x4d45414c; // "MEAL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte INGREDIENT = 1; // id, name
+    private static final byte MEAL = 2; // id, category, name, count, then id, amount, unit per ingredient
+    private static final byte SLOT = 3; // household, week start as epoch day, slot, meal id or 0 when emptied
+    private static final byte COMMIT = 4;
+    private static final int PLAN_SLOTS = Weekday.values().length * MealCategory.values().length;
+    private static final int STREAM_PAGE_SIZE = 1000;
+
+    private final Path file;
+    private final Properties settings;
+    private final boolean sync;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Consumer<List<Meal>>> mealListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<List<PlanDelta>>> planListeners = new CopyOnWriteArrayList<>();
+    private final MetricsRegistry metrics = MetricsRegistry.global();
+    private FileChannel channel;
+
+    // replayed state, guarded by lock
+    private final List<String> ingredientNames = new ArrayList<>(List.of("")); // by id, ids start at 1
+    private final Map<String, Integer> ingredientIds = new HashMap<>();
+    private final List<StoredMeal> meals = new ArrayList<>(List.of(new StoredMeal(0, null))); // by id
+    private final Map<String, StoredMeal> mealsByName = new HashMap<>();
+    private final List<List<StoredMeal>> mealsByCategory = new ArrayList<>();
+    private final Map<Integer, NavigableMap<LocalDate, int[]>> plansByHousehold = new HashMap<>();
+
+    public EmbeddedStore(Path file, Properties settings) {
+        this.file = file;
+        this.settings = settings;
+        this.sync = Boolean.parseBoolean(settings.getProperty("storage.sync", "true"));
+        for (int i = 0; i < MealCategory.values().length; i++) {
+            mealsByCategory.add(new ArrayList<>());
+        }
+    }
+
+    @Override
+    public String getSetting(String key, String defaultValue) {
+        return settings.getProperty(key, defaultValue);
+    }
+
+    @Override
+    public void addMealListener(Consumer<List<Meal>> listener) {
+        mealListeners.add(listener);
+    }
+
+    @Override
+    public void addPlanListener(Consumer<List<PlanDelta>> listener) {
+        planListeners.add(listener);
+    }
+
+    /**
+     * Opens the store file, creating it on first use, and replays it.
+     */
+    @Override
+    public void initDbStructures() {
+        try (LatencyMetric.Sample sample = time("initDbStructures")) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                lockFile();
+                if (channel.size() == 0) {
+                    writeFully(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip());
+                    force();
+                }
+                long validEnd = replay();
+                if (validEnd < channel.size()) {
+                    channel.truncate(validEnd); // an interrupted write, never committed
+                }
+                channel.position(validEnd);
+                sample.rows(meals.size() - 1);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                channel = null;
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new StorageException("Error while opening the store " + file + ". Application shutting down.", e);
+        }
+    }
+
+    private void lockFile() throws IOException {
+        FileLock fileLock;
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null; // held by another store of this process
+        }
+        if (fileLock == null) {
+            throw new StorageException("The store " + file + " is in use by another planner.");
+        }
+    }
+
+    @Override
+    public void closeConnections() {
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.close(); // releases the file lock as well
+                channel = null;
+            }
+        } catch (IOException e) {
+            throw new StorageException("Unable to close the store file.", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> persistMeals(List<Meal> batch) {
+        List<Meal> newMeals = new ArrayList<>(batch.size());
+        List<String> skipped = new ArrayList<>();
+        try (LatencyMetric.Sample sample = time("persistMeals")) {
+            lock.writeLock().lock();
+            try {
+                Set<String> names = new HashSet<>();
+                for (Meal meal : batch) {
+                    if (mealsByName.containsKey(meal.getMealName()) || !names.add(meal.getMealName())) {
+                        skipped.add(meal.getMealName());
+                    } else {
+                        newMeals.add(meal);
+                    }
+                }
+                if (newMeals.isEmpty()) {
+                    return skipped;
+                }
+
+                LogBuffer log = new LogBuffer();
+                Map<String, Integer> newIngredients = new LinkedHashMap<>();
+                int nextIngredientId = ingredientNames.size();
+                for (Meal meal : newMeals) {
+                    for (String ingredient : meal.getMealIngredients()) {
+                        if (!ingredientIds.containsKey(ingredient) && !newIngredients.containsKey(ingredient)) {
+                            newIngredients.put(ingredient, nextIngredientId);
+                            log.begin(INGREDIENT).putInt(nextIngredientId++).putString(ingredient).end();
+                        }
+                    }
+                }
+                int mealId = meals.size();
+                for (Meal meal : newMeals) {
+                    String[] ingredients = meal.getMealIngredients();
+                    log.begin(MEAL).putInt(mealId++).put((byte) meal.getMealCategory().ordinal())
+                            .putString(meal.getMealName()).putInt(ingredients.length);
+                    for (int i = 0; i < ingredients.length; i++) {
+                        Integer ingredientId = ingredientIds.get(ingredients[i]);
+                        log.putInt(ingredientId != null ? ingredientId : newIngredients.get(ingredients[i]))
+                                .putDouble(meal.getAmounts()[i]).put((byte) meal.getUnits()[i].ordinal());
+                    }
+                    log.end();
+                }
+                commit(log, "Error while writing meal data to the store. Application shutting down.");
+                // the same records the replay reads, so memory and file can't disagree
+                apply(log.flip());
+                sample.rows(newMeals.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        mealListeners.forEach(listener -> listener.accept(newMeals));
+        return skipped;
+    }
+
+    @Override
+    public List<Meal> getMealsByCategory(MealCategory category, boolean sort) {
+        try (LatencyMetric.Sample sample = time("getMealsByCategory")) {
+            List<StoredMeal> stored;
+            lock.readLock().lock();
+            try {
+                stored = new ArrayList<>(mealsByCategory.get(category.ordinal()));
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (sort) {
+                stored.sort(Comparator.comparing((StoredMeal meal) -> meal.meal.getMealName())
+                        .thenComparingInt(StoredMeal::id));
+            }
+            List<Meal> result = new ArrayList<>(stored.size());
+            stored.forEach(meal -> result.add(meal.meal));
+            sample.rows(result.size());
+            return result;
+        }
+    }
+
+    /**
+     * Visits the meals in pages copied under the read lock, so writers aren't held up while the visitor works.
+     * Meals are only ever appended, a page starts where the previous one ended.
+     */
+    @Override
+    public void streamMealsByCategory(MealCategory category, MealVisitor visitor) throws IOException {
+        try (LatencyMetric.Sample sample = time("streamMealsByCategory")) {
+            int visited = 0;
+            while (true) {
+                List<StoredMeal> page;
+                lock.readLock().lock();
+                try {
+                    List<StoredMeal> stored = mealsByCategory.get(category.ordinal());
+                    page = new ArrayList<>(stored.subList(visited,
+                            Math.min(stored.size(), visited + STREAM_PAGE_SIZE)));
+                } finally {
+                    lock.readLock().unlock();
+                }
+                for (StoredMeal meal : page) {
+                    visitor.visit(meal.meal);
+                }
+                visited += page.size();
+                if (page.size() < STREAM_PAGE_SIZE) {
+                    break;
+                }
+            }
+            sample.rows(visited);
+        }
+    }
+
+    @Override
+    public void persistPlans(Map<PlanKey, List<PlanLineItem>> plans) {
+        updatePlans("persistPlans", () -> {
+            Map<PlanKey, int[]> newSlots = new HashMap<>();
+            for (Map.Entry<PlanKey, List<PlanLineItem>> plan : plans.entrySet()) {
+                int[] slots = new int[PLAN_SLOTS];
+                for (PlanLineItem item : plan.getValue()) {
+                    slots[slotOf(item.getWeekday(), item.getMealCategory())] = mealIdOf(item.getMealName());
+                }
+                newSlots.put(plan.getKey(), slots);
+            }
+            return newSlots;
+        });
+    }
+
+    @Override
+    public void replaceSlot(PlanKey planKey, PlanLineItem item) {
+        updatePlans("replaceSlot", () -> {
+            int[] slots = slotsOf(planKey).clone();
+            slots[slotOf(item.getWeekday(), item.getMealCategory())] = mealIdOf(item.getMealName());
+            return Map.of(planKey, slots);
+        });
+    }
+
+    @Override
+    public void swapSlots(PlanKey planKey, MealCategory category, Weekday first, Weekday second) {
+        updatePlans("swapSlots", () -> {
+            int[] slots = slotsOf(planKey).clone();
+            int firstSlot = slotOf(first, category);
+            int secondSlot = slotOf(second, category);
+            int swap = slots[firstSlot];
+            slots[firstSlot] = slots[secondSlot];
+            slots[secondSlot] = swap;
+            return Map.of(planKey, slots);
+        });
+    }
+
+    @Override
+    public void clearPlan(PlanKey planKey) {
+        updatePlans("clearPlan", () -> Map.of(planKey, new int[PLAN_SLOTS]));
+    }
+
+    /**
+     * Computes the new slots under the write lock, appends the changed ones and applies them.
+     */
+    private void updatePlans(String method, Supplier<Map<PlanKey, int[]>> update) {
+        List<PlanDelta> deltas = new ArrayList<>();
+        try (LatencyMetric.Sample sample = time(method)) {
+            lock.writeLock().lock();
+            try {
+                LogBuffer log = new LogBuffer();
+                for (Map.Entry<PlanKey, int[]> plan : update.get().entrySet()) {
+                    PlanKey planKey = plan.getKey();
+                    int[] before = slotsOf(planKey);
+                    int[] after = plan.getValue();
+                    List<Integer> removed = new ArrayList<>();
+                    List<Integer> added = new ArrayList<>();
+                    for (int slot = 0; slot < PLAN_SLOTS; slot++) {
+                        if (before[slot] == after[slot]) {
+                            continue;
+                        }
+                        log.begin(SLOT).putInt(planKey.householdId()).putLong(planKey.weekStart().toEpochDay())
+                                .put((byte) slot).putInt(after[slot]).end();
+                        if (before[slot] != 0) {
+                            removed.add(before[slot]);
+                        }
+                        if (after[slot] != 0) {
+                            added.add(after[slot]);
+                        }
+                    }
+                    if (!removed.isEmpty() || !added.isEmpty()) {
+                        deltas.add(new PlanDelta(planKey, removed, added));
+                    }
+                }
+                if (!deltas.isEmpty()) {
+                    commit(log, "Error while writing meal plan to the store.");
+                    apply(log.flip());
+                }
+                sample.rows(deltas.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (!deltas.isEmpty()) {
+            planListeners.forEach(listener -> listener.accept(deltas));
+        }
+    }
+
+    private int mealIdOf(String mealName) {
+        StoredMeal meal = mealsByName.get(mealName);
+        if (meal == null) {
+            throw new StorageException(String.format("Error while writing meal plan to the store: %s is not stored.",
+                    mealName));
+        }
+        return meal.id;
+    }
+
+    // empty slots as 0, the array must not be modified
+    private int[] slotsOf(PlanKey planKey) {
+        NavigableMap<LocalDate, int[]> plans = plansByHousehold.get(planKey.householdId());
+        int[] slots = plans == null ? null : plans.get(planKey.weekStart());
+        return slots != null ? slots : new int[PLAN_SLOTS];
+    }
+
+    private static int slotOf(Weekday weekday, MealCategory category) {
+        return weekday.ordinal() * MealCategory.values().length + category.ordinal();
+    }
+
+    @Override
+    public List<PlanLineItem> getMealPlan(PlanKey planKey) {
+        try (LatencyMetric.Sample sample = time("getMealPlan")) {
+            List<PlanLineItem> mealPlan = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                int[] slots = slotsOf(planKey);
+                int categories = MealCategory.values().length;
+                for (int slot = 0; slot < PLAN_SLOTS; slot++) {
+                    if (slots[slot] != 0) {
+                        mealPlan.add(new PlanLineItem(Weekday.values()[slot / categories],
+                                MealCategory.values()[slot % categories], meals.get(slots[slot]).meal.getMealName()));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            sample.rows(mealPlan.size());
+            return mealPlan;
+        }
+    }
+
+    @Override
+    public PlanKey getLatestPlan(int householdId) {
+        try (LatencyMetric.Sample sample = time("getLatestPlan")) {
+            lock.readLock().lock();
+            try {
+                NavigableMap<LocalDate, int[]> plans = plansByHousehold.get(householdId);
+                sample.rows(plans == null || plans.isEmpty() ? 0 : 1);
+                return plans == null || plans.isEmpty() ? null : new PlanKey(householdId, plans.lastKey());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Sums the ingredients of the planned meals in memory; the visitor is called after the lock is released.
+     */
+    @Override
+    public void streamShoppingList(Collection<PlanKey> planKeys, ShoppingListVisitor visitor) throws IOException {
+        try (LatencyMetric.Sample sample = time("streamShoppingList")) {
+            Map<Long, double[]> amounts = new LinkedHashMap<>(); // ingredient id and unit -> amount
+            List<String> names = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (PlanKey planKey : new LinkedHashSet<>(planKeys)) {
+                    for (int mealId : slotsOf(planKey)) {
+                        if (mealId == 0) {
+                            continue;
+                        }
+                        Meal meal = meals.get(mealId).meal;
+                        int[] ids = meal.getIngredientIds();
+                        for (int i = 0; i < ids.length; i++) {
+                            amounts.computeIfAbsent((long) ids[i] << 8 | meal.getUnits()[i].ordinal(),
+                                    key -> new double[1])[0] += meal.getAmounts()[i];
+                        }
+                    }
+                }
+                amounts.keySet().forEach(key -> names.add(ingredientNames.get((int) (key >>> 8))));
+            } finally {
+                lock.readLock().unlock();
+            }
+            int index = 0;
+            for (Map.Entry<Long, double[]> item : amounts.entrySet()) {
+                visitor.visit(names.get(index++), item.getValue()[0],
+                        Unit.values()[(int) (item.getKey() & 0xff)]);
+            }
+            sample.rows(amounts.size());
+        }
+    }
+
+    private LatencyMetric.Sample time(String method) {
+        return metrics.latency("EmbeddedStore." + method).start();
+    }
+
+    // log file
+
+    private void commit(LogBuffer log, String errorMessage) {
+        if (channel == null) {
+            throw new StorageException(errorMessage, new IOException("The store " + file + " is not open"));
+        }
+        log.begin(COMMIT).end();
+        ByteBuffer records = log.flip();
+        long start = 0;
+        try {
+            start = channel.position();
+            writeFully(records.duplicate());
+            force();
+        } catch (IOException e) {
+            try {
+                channel.truncate(start); // don't leave a torn change in front of the next one
+                channel.position(start);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw new StorageException(errorMessage, e);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void force() throws IOException {
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * @return the offset after the last intact commit record
+     */
+    private long replay() throws IOException {
+        long size = channel.size();
+        ByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (size < HEADER_SIZE || log.getInt() != MAGIC) {
+            throw new IOException(file + " is not a meal planner store");
+        }
+        if (log.getInt() != FORMAT_VERSION) {
+            throw new IOException(file + " was written by a different planner version");
+        }
+        // first pass finds the end of the committed part, the second applies it
+        int validEnd = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (log.remaining() >= Integer.BYTES) {
+            int length = log.getInt(log.position());
+            if (length < 1 || log.remaining() < Integer.BYTES * 2 + length) {
+                break;
+            }
+            crc.reset();
+            crc.update(log.slice(log.position() + Integer.BYTES, length));
+            if ((int) crc.getValue() != log.getInt(log.position() + Integer.BYTES + length)) {
+                break;
+            }
+            byte type = log.get(log.position() + Integer.BYTES);
+            log.position(log.position() + Integer.BYTES * 2 + length);
+            if (type == COMMIT) {
+                validEnd = log.position();
+            }
+        }
+        apply(log.limit(validEnd).position(HEADER_SIZE));
+        return validEnd;
+    }
+
+    /**
+     * Applies intact records to the in-memory state.
+     */
+    private void apply(ByteBuffer log) {
+        while (log.hasRemaining()) {
+            int length = log.getInt();
+            int next = log.position() + length + Integer.BYTES;
+            byte type = log.get();
+            switch (type) {
+                case INGREDIENT -> {
+                    int id = log.getInt();
+                    String name = getString(log);
+                    while (ingredientNames.size() <= id) {
+                        ingredientNames.add(null);
+                    }
+                    ingredientNames.set(id, name);
+                    ingredientIds.put(name, id);
+                }
+                case MEAL -> applyMeal(log);
+                case SLOT -> applySlot(log.getInt(), LocalDate.ofEpochDay(log.getLong()), log.get(), log.getInt());
+                case COMMIT -> {
+                }
+                default -> throw new StorageException(String.format(
+                        "Unknown record type %d in %s, written by a newer planner?", type, file));
+            }
+            log.position(next);
+        }
+    }
+
+    private void applyMeal(ByteBuffer log) {
+        int id = log.getInt();
+        MealCategory category = MealCategory.values()[log.get()];
+        String name = getString(log);
+        int count = log.getInt();
+        String[] ingredients = new String[count];
+        int[] ids = new int[count];
+        double[] amounts = new double[count];
+        Unit[] units = new Unit[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = log.getInt();
+            ingredients[i] = ingredientNames.get(ids[i]); // one instance per name, like the database dictionary
+            amounts[i] = log.getDouble();
+            units[i] = Unit.values()[log.get()];
+        }
+        StoredMeal meal = new StoredMeal(id, new Meal(category, name, ingredients, ids, amounts, units));
+        while (meals.size() <= id) {
+            meals.add(null);
+        }
+        meals.set(id, meal);
+        mealsByName.put(name, meal);
+        mealsByCategory.get(category.ordinal()).add(meal);
+    }
+
+    private void applySlot(int householdId, LocalDate weekStart, int slot, int mealId) {
+        NavigableMap<LocalDate, int[]> plans = plansByHousehold.computeIfAbsent(householdId, id -> new TreeMap<>());
+        int[] slots = plans.computeIfAbsent(weekStart, week -> new int[PLAN_SLOTS]);
+        slots[slot] = mealId;
+        if (Arrays.stream(slots).allMatch(id -> id == 0)) {
+            plans.remove(weekStart); // a week without meals is no plan, as in the database
+        }
+    }
+
+    private static String getString(ByteBuffer log) {
+        byte[] bytes = new byte[log.getInt()];
+        log.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record StoredMeal(int id, Meal meal) {
+    }
+
+    /**
+     * Growing buffer of records, each framed by its length and followed by its checksum.
+     */
+    private static class LogBuffer {
+        private ByteBuffer buffer = ByteBuffer.allocate(1024);
+        private int recordStart;
+
+        private LogBuffer begin(byte type) {
+            recordStart = buffer.position();
+            return putInt(0).put(type);
+        }
+
+        private void end() {
+            int length = buffer.position() - recordStart - Integer.BYTES;
+            buffer.putInt(recordStart, length);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), recordStart + Integer.BYTES, length);
+            putInt((int) crc.getValue());
+        }
+
+        private LogBuffer put(byte value) {
+            ensure(1).put(value);
+            return this;
+        }
+
+        private LogBuffer putInt(int value) {
+            ensure(Integer.BYTES).putInt(value);
+            return this;
+        }
+
+        private LogBuffer putLong(long value) {
+            ensure(Long.BYTES).putLong(value);
+            return this;
+        }
+
+        private LogBuffer putDouble(double value) {
+            ensure(Double.BYTES).putDouble(value);
+            return this;
+        }
+
+        private LogBuffer putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes);
+            return this;
+        }
+
+        private ByteBuffer ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer = grown.put(buffer.flip());
+            }
+            return buffer;
+        }
+
+        /**
+         * @return the records written so far, ready to be read
+         */
+        private ByteBuffer flip() {
+            return buffer.duplicate().flip();
+        }
+    }
+}
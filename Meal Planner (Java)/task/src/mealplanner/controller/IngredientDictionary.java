@@ -0,0 +1,158 @@
+package mealplanner.controller;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe cache of {@code ingredient_names}: ingredient name to id and back.
+ * <p>
+ * Nothing is loaded up front. Entries arrive as meals are read or written, and only after the transaction
+ * that wrote them has committed. A rolled back transaction invalidates the names it touched. Once the cache
+ * holds more than {@code maxSize} names, the least recently used ones are evicted; the database remains the
+ * source of truth, so an evicted name is simply looked up again.
+ * <p>
+ * Names are interned: every meal read through the dictionary references the same {@code String} instance
+ * for the same ingredient, so caching many meals doesn't copy the name per meal.
+ * <p>
+ * Lookups take no lock. They only stamp the entry with the current tick of a clock that advances once per
+ * added name, so a hot entry is written rarely. Adding, invalidating and evicting are serialized on one lock,
+ * which keeps both directions in agreement. Eviction is approximate: when the cache overflows, one pass drops
+ * the oldest stamped eighth of the entries, so its cost is spread over many additions.
+ */
+class IngredientDictionary {
+    private final int maxSize;
+    private final Map<String, Entry> byName = new ConcurrentHashMap<>();
+    private final Map<Integer, Entry> byId = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private volatile long clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    IngredientDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Looks the name up and counts a hit or a miss, so call it once per name that needs an id.
+     */
+    Integer idOf(String name) {
+        Entry entry = byName.get(name);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        touch(entry);
+        return entry.id;
+    }
+
+    /**
+     * @return the interned name for the id, or null if it isn't cached
+     */
+    String nameOf(int id) {
+        Entry entry = byId.get(id);
+        if (entry == null) {
+            return null;
+        }
+        touch(entry);
+        return entry.name;
+    }
+
+    /**
+     * Registers the mapping if it is new.
+     *
+     * @return the interned name for the id
+     */
+    String put(int id, String name) {
+        String interned = nameOf(id);
+        if (interned != null) {
+            return interned;
+        }
+        synchronized (writeLock) {
+            Entry entry = byId.get(id);
+            if (entry != null) { // added by another thread meanwhile
+                return entry.name;
+            }
+            entry = new Entry(id, name, clock++);
+            Entry previous = byName.put(name, entry);
+            if (previous != null) {
+                byId.remove(previous.id, previous); // the name was recreated under a new id
+            }
+            byId.put(id, entry);
+            evictOverflow();
+            return name;
+        }
+    }
+
+    void putAll(Map<String, Integer> idsByName) {
+        idsByName.forEach((name, id) -> put(id, name));
+    }
+
+    /**
+     * Drops the given names, e.g. after a rollback: the ids they map to may no longer be valid.
+     */
+    void invalidate(Collection<String> names) {
+        synchronized (writeLock) {
+            for (String name : names) {
+                Entry entry = byName.remove(name);
+                if (entry != null) {
+                    byId.remove(entry.id, entry);
+                }
+            }
+        }
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private void touch(Entry entry) {
+        long now = clock;
+        if (entry.lastUsed != now) {
+            entry.lastUsed = now;
+        }
+    }
+
+    // under the write lock
+    private void evictOverflow() {
+        int excess = byId.size() - maxSize;
+        if (excess <= 0) {
+            return;
+        }
+        excess += maxSize / 8;
+        long[] stamps = byId.values().stream().mapToLong(entry -> entry.lastUsed).sorted().toArray();
+        long cutoff = stamps[Math.min(excess, stamps.length) - 1];
+        for (Entry entry : byId.values()) {
+            if (excess == 0) {
+                break;
+            }
+            if (entry.lastUsed <= cutoff) {
+                byId.remove(entry.id, entry);
+                byName.remove(entry.name, entry);
+                excess--;
+            }
+        }
+    }
+
+    private static class Entry {
+        private final int id;
+        private final String name;
+        private volatile long lastUsed;
+
+        private Entry(int id, String name, long lastUsed) {
+            this.id = id;
+            this.name = name;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package mealplanner.controller;
+
+import mealplanner.metrics.MetricsRegistry;
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of the meal catalog for planning: the meals of a category sorted by name,
+ * plus a name index per category so that checking a user's choice is a hash lookup.
+ * <p>
+ * A category is loaded from the database on first use and invalidated when a meal of that category is
+ * persisted through the same {@link MealRepository}. Entries older than the time to live are reloaded, which picks up
+ * meals added by other processes. When more than {@code maxMeals} meals are cached, the least recently used
+ * categories are evicted; a category larger than the limit on its own is served without caching.
+ * Hits and misses are published as the {@code cache.meals} gauges.
+ * <p>
+ * With a {@link CatalogSnapshot}, meal names and single meals are served from the mapped snapshot instead, until
+ * a meal of the category is persisted through this process; from then on the category is read from the database.
+ * Whole meals of a category, which only planning needs, always come from the database cache.
+ */
+public class MealCatalog {
+    private final MealRepository db;
+    private final int maxMeals;
+    private final long ttlMillis;
+    private final Map<MealCategory, CategoryEntry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final CatalogSnapshot snapshot;
+    private final Set<MealCategory> changedSinceSnapshot = ConcurrentHashMap.newKeySet();
+
+    public MealCatalog(MealRepository db, int maxMeals, long ttlMillis) {
+        this(db, maxMeals, ttlMillis, null);
+    }
+
+    /**
+     * @param snapshot serves the categories that are not changed through {@code db}, may be null
+     */
+    public MealCatalog(MealRepository db, int maxMeals, long ttlMillis, CatalogSnapshot snapshot) {
+        this.db = db;
+        this.maxMeals = maxMeals;
+        this.ttlMillis = ttlMillis;
+        this.snapshot = snapshot;
+        db.addMealListener(meals -> meals.forEach(meal -> {
+            changedSinceSnapshot.add(meal.getMealCategory());
+            entries.remove(meal.getMealCategory());
+        }));
+        MetricsRegistry.global().hitRateGauges("cache.meals", hits::get, misses::get);
+        MetricsRegistry.global().gauge("cache.meals.size",
+                () -> entries.values().stream().mapToInt(entry -> entry.sortedMeals.size()).sum());
+    }
+
+    /**
+     * Configured by {@code cache.meals.maxSize}, {@code cache.meals.ttlSeconds} and, if a snapshot exists,
+     * {@code cache.meals.snapshot} in {@code db.properties}.
+     */
+    public static MealCatalog create(Storage db) {
+        String snapshotFile = db.getSetting("cache.meals.snapshot", "");
+        CatalogSnapshot snapshot = null;
+        if (!snapshotFile.isBlank() && Files.exists(Path.of(snapshotFile))) {
+            try {
+                snapshot = CatalogSnapshot.open(Path.of(snapshotFile));
+            } catch (IOException e) {
+                System.out.printf("Unable to read the catalog snapshot %s: %s%n", snapshotFile, e.getMessage());
+            }
+        }
+        return new MealCatalog(db,
+                Integer.parseInt(db.getSetting("cache.meals.maxSize", "200000")),
+                Long.parseLong(db.getSetting("cache.meals.ttlSeconds", "300")) * 1000,
+                snapshot);
+    }
+
+    /**
+     * @return the meals of the category sorted by name, not to be modified
+     */
+    public List<Meal> getMealsByCategory(MealCategory category) {
+        return entry(category).sortedMeals;
+    }
+
+    /**
+     * @return the meal names of the category sorted by name, not to be modified
+     */
+    public List<String> getMealNames(MealCategory category) {
+        if (servedBySnapshot(category)) {
+            return snapshot.getMealNames(category);
+        }
+        return entry(category).sortedNames;
+    }
+
+    /**
+     * @return the meal with the given name in the category, or null if there is none
+     */
+    public Meal findMeal(MealCategory category, String mealName) {
+        if (servedBySnapshot(category)) {
+            return snapshot.findMeal(category, mealName);
+        }
+        return entry(category).mealsByName.get(mealName);
+    }
+
+    private boolean servedBySnapshot(MealCategory category) {
+        if (snapshot == null || changedSinceSnapshot.contains(category)) {
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    public void invalidate() {
+        entries.clear();
+    }
+
+    private CategoryEntry entry(MealCategory category) {
+        long now = System.currentTimeMillis();
+        CategoryEntry entry = entries.get(category);
+        if (entry != null && now - entry.loadedAt <= ttlMillis) {
+            entry.lastAccess = now;
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+
+        entry = new CategoryEntry(db.getMealsByCategory(category, true), now);
+        if (entry.sortedMeals.size() <= maxMeals) {
+            entries.put(category, entry);
+            evictOverflow(category);
+        } else {
+            entries.remove(category);
+        }
+        return entry;
+    }
+
+    private synchronized void evictOverflow(MealCategory keep) {
+        int cached = entries.values().stream().mapToInt(entry -> entry.sortedMeals.size()).sum();
+        while (cached > maxMeals) {
+            Optional<Map.Entry<MealCategory, CategoryEntry>> leastRecentlyUsed = entries.entrySet().stream()
+                    .filter(entry -> entry.getKey() != keep)
+                    .min(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+            if (leastRecentlyUsed.isEmpty()) {
+                return;
+            }
+            entries.remove(leastRecentlyUsed.get().getKey());
+            cached -= leastRecentlyUsed.get().getValue().sortedMeals.size();
+        }
+    }
+
+    private static class CategoryEntry {
+        private final List<Meal> sortedMeals;
+        private final List<String> sortedNames;
+        private final Map<String, Meal> mealsByName;
+        private final long loadedAt;
+        private volatile long lastAccess;
+
+        private CategoryEntry(List<Meal> sortedMeals, long loadedAt) {
+            this.sortedMeals = Collections.unmodifiableList(sortedMeals);
+            this.sortedNames = sortedMeals.stream().map(Meal::getMealName).toList();
+            this.mealsByName = new HashMap<>(sortedMeals.size() * 2);
+            sortedMeals.forEach(meal -> mealsByName.put(meal.getMealName(), meal));
+            this.loadedAt = loadedAt;
+            this.lastAccess = loadedAt;
+        }
+    }
+}
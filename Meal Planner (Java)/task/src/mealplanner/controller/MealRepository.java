@@ -0,0 +1,46 @@
+package mealplanner.controller;
+
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.model.MealVisitor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stored meals with their ingredients. Failures of the storage itself surface as {@link StorageException}.
+ */
+public interface MealRepository {
+    /**
+     * Registers a callback invoked with every batch of meals after it has been committed.
+     */
+    void addMealListener(Consumer<List<Meal>> listener);
+
+    /**
+     * @return false if the meal was not stored because a meal with the same name exists
+     */
+    default boolean persistMeal(Meal meal) {
+        return persistMeals(List.of(meal)).isEmpty();
+    }
+
+    /**
+     * Stores the meals and all their ingredients atomically, except the meals whose name is taken or appears
+     * earlier in the list. Listeners only see the meals that were stored.
+     *
+     * @return names of the meals that were skipped, in list order; empty if all of them were stored
+     */
+    List<String> persistMeals(List<Meal> meals);
+
+    /**
+     * @param sort by name, otherwise in insertion order
+     * @return the meals of the category with their ingredient ids, amounts and units
+     */
+    List<Meal> getMealsByCategory(MealCategory category, boolean sort);
+
+    /**
+     * Streams the meals of the category to the visitor in insertion order, as they are read, without holding
+     * the category in memory.
+     */
+    void streamMealsByCategory(MealCategory category, MealVisitor visitor) throws IOException;
+}
@@ -0,0 +1,65 @@
+package mealplanner.controller;
+
+import mealplanner.model.MealCategory;
+import mealplanner.model.PlanDelta;
+import mealplanner.model.PlanKey;
+import mealplanner.model.PlanLineItem;
+import mealplanner.model.ShoppingListVisitor;
+import mealplanner.model.Weekday;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Weekly plans per household and the shopping lists derived from them. Plans reference meals by name,
+ * a name that isn't stored fails the update with a {@link StorageException}.
+ */
+public interface PlanRepository {
+    /**
+     * Registers a callback invoked with the meal changes of every plan update after it has been committed.
+     */
+    void addPlanListener(Consumer<List<PlanDelta>> listener);
+
+    /**
+     * Replaces the plan of the given household and week with the line items in one transaction.
+     */
+    default void persistPlan(PlanKey planKey, List<PlanLineItem> planLineItems) {
+        persistPlans(Map.of(planKey, planLineItems));
+    }
+
+    /**
+     * Replaces the given plans in one transaction; slots missing from a new plan are emptied.
+     */
+    void persistPlans(Map<PlanKey, List<PlanLineItem>> plans);
+
+    /**
+     * Puts the meal into its weekday and category slot of the plan, leaving the other slots alone.
+     */
+    void replaceSlot(PlanKey planKey, PlanLineItem item);
+
+    /**
+     * Exchanges the meals of a category between two days of the plan.
+     */
+    void swapSlots(PlanKey planKey, MealCategory category, Weekday first, Weekday second);
+
+    void clearPlan(PlanKey planKey);
+
+    /**
+     * @return the planned meals in weekday, category order; slots that were never planned are absent
+     */
+    List<PlanLineItem> getMealPlan(PlanKey planKey);
+
+    /**
+     * @return the household's plan with the latest week, or null if the household has no plan
+     */
+    PlanKey getLatestPlan(int householdId);
+
+    /**
+     * Streams the combined shopping list of the plans to the visitor, one item per ingredient and unit in no
+     * particular order.
+     */
+    void streamShoppingList(Collection<PlanKey> planKeys, ShoppingListVisitor visitor) throws IOException;
+}
@@ -0,0 +1,200 @@
+package mealplanner.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Brings the application schema up to date from the versioned scripts in {@code /db/migration}.
+ * <p>
+ * Applied versions are recorded with their checksum in {@code schema_version}. When the schema is current,
+ * startup costs a single query, which also verifies the checksum of every applied version and that the
+ * application tables still exist.
+ * Tables dropped from outside (the stage tests do that) make the schema start over from version 1.
+ * Pending scripts are applied in one transaction under an advisory lock, so concurrently starting
+ * planner processes don't migrate twice.
+ */
+class SchemaMigrator {
+    // in order of application, a script must never change once it has been released
+    private static final String[] MIGRATIONS = {
+            "V1__baseline.sql",
+            "V2__id_sequences.sql",
+            "V3__keys_and_indexes.sql",
+            "V4__normalize_plan.sql",
+            "V5__ingredient_dictionary.sql",
+            "V6__household_plans.sql",
+            "V7__shopping_list.sql",
+            "V8__ingredient_amounts.sql",
+            "V9__meals_category_id_index.sql",
+    };
+    // every table created by the scripts, dependents first
+    private static final String[] APP_TABLES = {"shopping_list", "plan", "ingredients", "ingredient_names", "meals"};
+    private static final long MIGRATION_LOCK_ID = 0x6d65616c73L;
+
+    private final List<Migration> migrations = new ArrayList<>();
+
+    SchemaMigrator() {
+        for (String script : MIGRATIONS) {
+            migrations.add(Migration.load(script));
+        }
+    }
+
+    /**
+     * @return the number of scripts applied, 0 when the schema was already current
+     */
+    int migrate(Connection connection) throws SQLException {
+        if (isCurrent(connection)) {
+            return 0;
+        }
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("select pg_advisory_xact_lock(" + MIGRATION_LOCK_ID + ")");
+            statement.executeUpdate("create table if not exists schema_version (" +
+                    "version integer primary key," +
+                    "description varchar(256) NOT NULL," +
+                    "checksum bigint NOT NULL," +
+                    "applied_at timestamp NOT NULL default now()" +
+                    ")");
+
+            // re-read under the lock, another process may have migrated in the meantime
+            VersionState state = readState(statement);
+            if (state.version > 0 && !state.tablesPresent) {
+                statement.executeUpdate("drop table if exists " + String.join(", ", APP_TABLES) + " cascade");
+                statement.executeUpdate("delete from schema_version");
+                state = new VersionState(0, Map.of(), false);
+            }
+            verifyChecksums(state);
+
+            int applied = 0;
+            try (PreparedStatement record = PooledStatement.prepare(connection, "recordMigration",
+                    "insert into schema_version (version, description, checksum) values (?, ?, ?)")) {
+                for (Migration migration : migrations) {
+                    if (migration.version <= state.version) {
+                        continue;
+                    }
+                    statement.execute(migration.sql);
+                    record.setInt(1, migration.version);
+                    record.setString(2, migration.description);
+                    record.setLong(3, migration.checksum);
+                    record.executeUpdate();
+                    applied++;
+                }
+            }
+            connection.commit();
+            return applied;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private boolean isCurrent(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            VersionState state = readState(statement);
+            if (state.version == latestVersion() && state.tablesPresent) {
+                verifyChecksums(state);
+                return true;
+            }
+            return false;
+        } catch (SQLException e) {
+            if ("42P01".equals(e.getSQLState())) { // undefined_table: schema_version doesn't exist yet
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private static VersionState readState(Statement statement) throws SQLException {
+        StringBuilder tablesPresent = new StringBuilder();
+        for (String table : APP_TABLES) {
+            tablesPresent.append(tablesPresent.length() == 0 ? "" : " and ")
+                    .append("to_regclass('").append(table).append("') is not null");
+        }
+        // one row per applied version, a single row of nulls when there is none
+        TreeMap<Integer, Long> checksums = new TreeMap<>();
+        boolean present = false;
+        try (ResultSet resultSet = statement.executeQuery("select v.version, v.checksum, " + tablesPresent +
+                " from (select 1) one left join schema_version v on true order by v.version")) {
+            while (resultSet.next()) {
+                int version = resultSet.getInt(1);
+                if (!resultSet.wasNull()) {
+                    checksums.put(version, resultSet.getLong(2));
+                }
+                present = resultSet.getBoolean(3);
+            }
+        }
+        int version = checksums.isEmpty() ? 0 : checksums.lastKey();
+        return new VersionState(version, checksums, present);
+    }
+
+    private void verifyChecksums(VersionState state) throws SQLException {
+        if (state.version > latestVersion()) {
+            throw new SQLException(String.format("Database schema version %d is newer than the latest version %d " +
+                    "known to this planner", state.version, latestVersion()));
+        }
+        for (Migration migration : migrations) {
+            if (migration.version > state.version) {
+                break;
+            }
+            Long applied = state.checksums.get(migration.version);
+            if (applied == null || applied != migration.checksum) {
+                throw new SQLException(String.format("Applied schema version %d differs from the bundled script " +
+                        "%s (%s)", migration.version, migration.script,
+                        applied == null ? "missing from schema_version" : "checksum mismatch"));
+            }
+        }
+    }
+
+    private int latestVersion() {
+        return migrations.get(migrations.size() - 1).version;
+    }
+
+    private record VersionState(int version, Map<Integer, Long> checksums, boolean tablesPresent) {
+    }
+
+    private static class Migration {
+        private final String script;
+        private final int version;
+        private final String description;
+        private final String sql;
+        private final long checksum;
+
+        private Migration(String script, int version, String description, String sql) {
+            this.script = script;
+            this.version = version;
+            this.description = description;
+            this.sql = sql;
+            CRC32 crc = new CRC32();
+            crc.update(sql.getBytes(StandardCharsets.UTF_8));
+            this.checksum = crc.getValue();
+        }
+
+        // V<version>__<description>.sql
+        private static Migration load(String script) {
+            try (InputStream inputStream = SchemaMigrator.class.getResourceAsStream("/db/migration/" + script)) {
+                if (inputStream == null) {
+                    throw new IllegalStateException("Migration script " + script + " is missing");
+                }
+                String sql = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)
+                        .replace("\r\n", "\n"); // checksum independent of the checkout's line endings
+                int separator = script.indexOf("__");
+                int version = Integer.parseInt(script.substring(1, separator));
+                String description = script.substring(separator + 2, script.length() - ".sql".length()).replace('_', ' ');
+                return new Migration(script, version, description, sql);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
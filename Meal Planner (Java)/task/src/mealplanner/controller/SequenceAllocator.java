@@ -0,0 +1,44 @@
+package mealplanner.controller;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Hands out ids from a PostgreSQL sequence a block at a time. The sequence is created with
+ * {@code increment by BLOCK_SIZE} (see {@code V2__id_sequences.sql}), so a single {@code nextval} reserves
+ * the ids {@code [value, value + BLOCK_SIZE)} for this process alone; other processes reserve their own
+ * blocks from the same sequence.
+ * Ids of a partly used block are lost when the process ends, which only leaves gaps.
+ */
+class SequenceAllocator {
+    static final int BLOCK_SIZE = 100;
+
+    private final String sequenceName;
+    private long next;
+    private long limit;
+
+    SequenceAllocator(String sequenceName) {
+        this.sequenceName = sequenceName;
+    }
+
+    /**
+     * @param connection used only when a new block has to be reserved; {@code nextval} is not transactional,
+     *                   so a rollback on this connection does not hand the block out again
+     */
+    synchronized int nextId(Connection connection) throws SQLException {
+        if (next >= limit) {
+            try (PreparedStatement preparedStatement =
+                         PooledStatement.prepare(connection, "nextval", "select nextval(?::regclass)")) {
+                preparedStatement.setString(1, sequenceName);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    resultSet.next();
+                    next = resultSet.getLong(1);
+                }
+                limit = next + BLOCK_SIZE;
+            }
+        }
+        return Math.toIntExact(next++);
+    }
+}
@@ -0,0 +1,155 @@
+package mealplanner.controller;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of prepared statements for one physical connection, keyed by SQL text.
+ * <p>
+ * Callers keep using try-with-resources: closing a cached statement only closes its open result set, clears its
+ * parameters, restores the fetch size, row limit, timeout and the other settings a borrower may have changed,
+ * and hands it back to the cache. The statement itself is closed when it is evicted or when the connection goes away.
+ * A connection is used by a single thread at a time, so the cache needs no locking; the counters are shared
+ * by all connections of a pool and therefore atomic.
+ */
+class StatementCache {
+    private final Connection physical;
+    private final int maxSize;
+    private final Stats stats;
+    private final Map<String, Entry> entries;
+
+    StatementCache(Connection physical, int maxSize, Stats stats) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.stats = stats;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true); // access order = LRU iteration order
+    }
+
+    PooledStatement prepare(String sql, Connection owner) throws SQLException {
+        if (maxSize <= 0) {
+            return PooledStatement.uncached(physical.prepareStatement(sql), owner);
+        }
+
+        Entry entry = entries.get(sql);
+        if (entry != null && !entry.inUse) {
+            stats.hits.incrementAndGet();
+        } else if (entry != null) {
+            // same SQL prepared again while the cached one is still open (nested use), don't share it
+            stats.misses.incrementAndGet();
+            return PooledStatement.uncached(physical.prepareStatement(sql), owner);
+        } else {
+            stats.misses.incrementAndGet();
+            PreparedStatement statement = physical.prepareStatement(sql);
+            try {
+                entry = new Entry(statement);
+            } catch (SQLException | RuntimeException e) {
+                closeQuietly(statement);
+                throw e;
+            }
+            entry.inUse = true; // before evicting, the new statement must not be the one to go
+            entries.put(sql, entry);
+            evictOverflow();
+        }
+        entry.inUse = true;
+        Entry borrowed = entry;
+        return new PooledStatement(entry.statement, owner, settingsChanged -> giveBack(borrowed, settingsChanged));
+    }
+
+    private void giveBack(Entry entry, boolean settingsChanged) throws SQLException {
+        entry.inUse = false;
+        ResultSet resultSet = entry.statement.getResultSet(); // left open by the borrower, holds its rows
+        if (resultSet != null) {
+            resultSet.close();
+        }
+        entry.statement.clearParameters();
+        entry.statement.clearBatch();
+        if (settingsChanged) {
+            entry.restoreSettings();
+        }
+        evictOverflow(); // entries skipped while in use
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest.inUse) {
+                continue; // evicted once its current user hands it back, see giveBack
+            }
+            iterator.remove();
+            closeQuietly(eldest.statement);
+            stats.evictions.incrementAndGet();
+        }
+    }
+
+    void closeAll() {
+        entries.values().forEach(entry -> closeQuietly(entry.statement));
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Hit/miss counters shared by the caches of all connections of a pool.
+     */
+    static class Stats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        long getHits() {
+            return hits.get();
+        }
+
+        long getMisses() {
+            return misses.get();
+        }
+
+        long getEvictions() {
+            return evictions.get();
+        }
+    }
+
+    private static class Entry {
+        private final PreparedStatement statement;
+        private final int fetchSize;
+        private final int fetchDirection;
+        private final long maxRows;
+        private final int maxFieldSize;
+        private final int queryTimeout;
+        private boolean inUse;
+
+        private Entry(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.fetchDirection = statement.getFetchDirection();
+            this.maxRows = statement.getLargeMaxRows();
+            this.maxFieldSize = statement.getMaxFieldSize();
+            this.queryTimeout = statement.getQueryTimeout();
+        }
+
+        private void restoreSettings() throws SQLException {
+            statement.setFetchSize(fetchSize);
+            statement.setFetchDirection(fetchDirection);
+            statement.setLargeMaxRows(maxRows);
+            statement.setMaxFieldSize(maxFieldSize);
+            statement.setQueryTimeout(queryTimeout);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package mealplanner.controller;
+
+import mealplanner.Main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * A storage backend: meals and plans plus its lifecycle. Selected by {@code storage} in {@code db.properties}:
+ * <ul>
+ *     <li>{@code postgres} (default): {@link Database}, a PostgreSQL server configured by the {@code jdbc.*}
+ *     and {@code pool.*} entries.</li>
+ *     <li>{@code embedded}: {@link EmbeddedStore}, a single append-only file at {@code storage.file}, no server
+ *     needed.</li>
+ * </ul>
+ */
+public interface Storage extends MealRepository, PlanRepository {
+    static Storage open() {
+        Properties properties = loadProperties();
+        String backend = properties.getProperty("storage", "postgres");
+        return switch (backend.toLowerCase()) {
+            case "postgres" -> new Database(properties);
+            case "embedded" -> new EmbeddedStore(Path.of(properties.getProperty("storage.file", "meals.db")),
+                    properties);
+            default -> throw new StorageException("Unknown storage backend " + backend + " in db.properties.");
+        };
+    }
+
+    private static Properties loadProperties() {
+        Properties properties = new Properties();
+        try (InputStream inputStream = Main.class.getResourceAsStream("/db.properties")) {
+            properties.load(inputStream);
+        } catch (IOException e) {
+            throw new StorageException("Database connection error, application shutting down.", e);
+        }
+        return properties;
+    }
+
+    /**
+     * @return the {@code db.properties} entry, or the default when absent
+     */
+    String getSetting(String key, String defaultValue);
+
+    /**
+     * Creates or upgrades what the backend needs before first use, e.g. the schema.
+     */
+    void initDbStructures();
+
+    /**
+     * Releases connections and files, the storage can't be used afterwards.
+     */
+    void closeConnections();
+}
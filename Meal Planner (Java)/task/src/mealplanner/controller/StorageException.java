@@ -0,0 +1,17 @@
+package mealplanner.controller;
+
+/**
+ * The storage backend failed, e.g. the database is unreachable or the store file is unreadable.
+ * The message is meant for the user, the cause for the log.
+ */
+public class StorageException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public StorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public StorageException(String message) {
+        super(message);
+    }
+}
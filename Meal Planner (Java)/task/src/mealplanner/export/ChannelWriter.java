@@ -0,0 +1,128 @@
+package mealplanner.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 text output to a channel through one reusable char buffer, encoder and byte buffer:
+ * writing a line allocates nothing.
+ */
+class ChannelWriter implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE * 3); // 3 bytes per UTF-16 unit at most
+
+    ChannelWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    ChannelWriter append(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+        return this;
+    }
+
+    ChannelWriter append(char c) throws IOException {
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put(c);
+        return this;
+    }
+
+    // digit by digit, instead of going through a temporary String
+    ChannelWriter append(long number) throws IOException {
+        if (number < 0) {
+            append('-');
+        }
+        long divisor = 1;
+        while (Math.abs(number / divisor) >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            append((char) ('0' + Math.abs(number / divisor % 10)));
+        }
+        return this;
+    }
+
+    /**
+     * Appends the number rounded to 3 decimals, without trailing zeros: 2, 0.5, 1.125.
+     */
+    ChannelWriter appendDecimal(double number) throws IOException {
+        long thousandths = Math.round(number * 1000);
+        if (thousandths < 0) {
+            append('-');
+            thousandths = -thousandths;
+        }
+        append(thousandths / 1000);
+        int fraction = (int) (thousandths % 1000);
+        if (fraction != 0) {
+            append('.');
+            for (int divisor = 100; fraction != 0; divisor /= 10) {
+                append((char) ('0' + fraction / divisor));
+                fraction %= divisor;
+            }
+        }
+        return this;
+    }
+
+    ChannelWriter newLine() throws IOException {
+        return append(System.lineSeparator());
+    }
+
+    /**
+     * Encodes and writes everything appended so far, the channel is left open.
+     */
+    void finish() throws IOException {
+        encode(true);
+        CoderResult result = encoder.flush(bytes);
+        if (result.isError()) {
+            result.throwException();
+        }
+        drain();
+        encoder.reset();
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break; // underflow: all complete characters encoded, a dangling high surrogate stays in chars
+            }
+        }
+        chars.compact();
+        drain();
+        if (endOfInput && chars.position() > 0) {
+            throw new CharacterCodingException();
+        }
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,72 @@
+package mealplanner.export;
+
+import mealplanner.controller.PlanRepository;
+import mealplanner.model.PlanKey;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes shopping lists to files in constant memory: items are streamed from the database straight into
+ * the output channel.
+ * <p>
+ * The list is written to a temporary file next to the target, which then replaces the target in one atomic
+ * rename. A failed export leaves an existing file untouched, and readers never see a half written list.
+ */
+public class ShoppingListExporter {
+    private final PlanRepository db;
+
+    public ShoppingListExporter(PlanRepository db) {
+        this.db = db;
+    }
+
+    /**
+     * Exports the combined shopping list of the plans, e.g. of several weeks or households,
+     * in the format matching the file name.
+     */
+    public void export(Collection<PlanKey> planKeys, Path target) throws IOException {
+        export(planKeys, target, ShoppingListFormat.forFileName(target.getFileName().toString()));
+    }
+
+    public void export(Collection<PlanKey> planKeys, Path target, ShoppingListFormat format) throws IOException {
+        Path absoluteTarget = target.toAbsolutePath();
+        // same directory, so that the rename stays within one file system
+        Path temporary = absoluteTarget.resolveSibling(String.format(".%s.%016x.tmp",
+                absoluteTarget.getFileName(), ThreadLocalRandom.current().nextLong()));
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+                 ChannelWriter writer = new ChannelWriter(channel)) {
+                format.begin(writer);
+                long[] items = {0};
+                db.streamShoppingList(planKeys, (ingredient, amount, unit) -> {
+                    if (items[0]++ > 0) {
+                        format.separator(writer);
+                    }
+                    format.item(writer, ingredient, amount, unit);
+                });
+                format.end(writer, items[0] == 0);
+                writer.finish();
+                channel.force(false); // on disk before the rename makes it visible
+            }
+            move(temporary, absoluteTarget);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
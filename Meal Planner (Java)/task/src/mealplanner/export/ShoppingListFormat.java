@@ -0,0 +1,131 @@
+package mealplanner.export;
+
+import mealplanner.model.Unit;
+
+import java.io.IOException;
+
+/**
+ * Output formats of {@link ShoppingListExporter}, picked by the extension of the target file.
+ */
+public enum ShoppingListFormat {
+    /**
+     * One ingredient per line. A number of pieces other than 1 is appended as {@code eggs x5},
+     * weights and volumes in a readable unit: {@code flour 1.5 kg}.
+     */
+    TEXT {
+        @Override
+        void item(ChannelWriter writer, String ingredient, double amount, Unit unit) throws IOException {
+            writer.append(ingredient);
+            if (unit != Unit.PIECE) {
+                writer.append(' ').appendDecimal(unit.displayAmount(amount)).append(' ')
+                        .append(unit.displaySymbol(amount));
+            } else if (amount != 1) {
+                writer.append(" x").appendDecimal(amount);
+            }
+            writer.newLine();
+        }
+    },
+    /**
+     * {@code ingredient,amount,unit} with a header line, amounts in the base unit, fields quoted where needed.
+     */
+    CSV {
+        @Override
+        void begin(ChannelWriter writer) throws IOException {
+            writer.append("ingredient,amount,unit").newLine();
+        }
+
+        @Override
+        void item(ChannelWriter writer, String ingredient, double amount, Unit unit) throws IOException {
+            boolean quoted = ingredient.indexOf(',') >= 0 || ingredient.indexOf('"') >= 0
+                    || ingredient.indexOf('\n') >= 0 || ingredient.indexOf('\r') >= 0;
+            if (!quoted) {
+                writer.append(ingredient);
+            } else {
+                writer.append('"');
+                for (int i = 0; i < ingredient.length(); i++) {
+                    char c = ingredient.charAt(i);
+                    if (c == '"') {
+                        writer.append('"');
+                    }
+                    writer.append(c);
+                }
+                writer.append('"');
+            }
+            writer.append(',').appendDecimal(amount).append(',').append(unit.getSymbol()).newLine();
+        }
+    },
+    /**
+     * An array of {@code {"ingredient": "flour", "amount": 1500, "unit": "g"}} objects, one per line,
+     * amounts in the base unit.
+     */
+    JSON {
+        @Override
+        void begin(ChannelWriter writer) throws IOException {
+            writer.append('[');
+        }
+
+        @Override
+        void item(ChannelWriter writer, String ingredient, double amount, Unit unit) throws IOException {
+            // begin leaves "[" without a line break, every item starts its own line after a separator
+            writer.newLine().append("  {\"ingredient\": \"");
+            for (int i = 0; i < ingredient.length(); i++) {
+                char c = ingredient.charAt(i);
+                switch (c) {
+                    case '"' -> writer.append("\\\"");
+                    case '\\' -> writer.append("\\\\");
+                    case '\n' -> writer.append("\\n");
+                    case '\r' -> writer.append("\\r");
+                    case '\t' -> writer.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            writer.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            writer.append(c);
+                        }
+                    }
+                }
+            }
+            writer.append("\", \"amount\": ").appendDecimal(amount)
+                    .append(", \"unit\": \"").append(unit.getSymbol()).append("\"}");
+        }
+
+        @Override
+        void separator(ChannelWriter writer) throws IOException {
+            writer.append(',');
+        }
+
+        @Override
+        void end(ChannelWriter writer, boolean empty) throws IOException {
+            if (!empty) {
+                writer.newLine();
+            }
+            writer.append(']').newLine();
+        }
+    };
+
+    void begin(ChannelWriter writer) throws IOException {
+    }
+
+    abstract void item(ChannelWriter writer, String ingredient, double amount, Unit unit) throws IOException;
+
+    // written between two items
+    void separator(ChannelWriter writer) throws IOException {
+    }
+
+    void end(ChannelWriter writer, boolean empty) throws IOException {
+    }
+
+    /**
+     * @return CSV for {@code .csv}, JSON for {@code .json}, plain text for any other file name
+     */
+    public static ShoppingListFormat forFileName(String fileName) {
+        String lowerCase = fileName.toLowerCase();
+        if (lowerCase.endsWith(".csv")) {
+            return CSV;
+        }
+        if (lowerCase.endsWith(".json")) {
+            return JSON;
+        }
+        return TEXT;
+    }
+}
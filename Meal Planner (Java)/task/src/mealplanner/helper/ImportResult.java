@@ -0,0 +1,16 @@
+package mealplanner.helper;
+
+import java.util.List;
+
+/**
+ * Outcome of a {@link RecipeImporter} run.
+ *
+ * @param rejections the reasons of the first rejected lines and meals; {@code rejected} counts all of them
+ */
+public record ImportResult(long imported, long rejected, List<String> rejections, long elapsedNanos) {
+    public String summary() {
+        double seconds = elapsedNanos / 1e9;
+        return String.format("Imported %d meals in %.2f s (%.0f meals/s), %d rows rejected.",
+                imported, seconds, seconds > 0 ? imported / seconds : 0, rejected);
+    }
+}
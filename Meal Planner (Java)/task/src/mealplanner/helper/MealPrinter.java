@@ -0,0 +1,108 @@
+package mealplanner.helper;
+
+import mealplanner.controller.MealRepository;
+import mealplanner.model.MealCategory;
+import mealplanner.model.PlanLineItem;
+import mealplanner.model.Weekday;
+import mealplanner.search.PantryMatch;
+import mealplanner.search.SearchHit;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static mealplanner.helper.Util.initCap;
+
+/**
+ * Output shared by the interactive dialogue and {@link ScriptRunner}, so both print the same format.
+ */
+public class MealPrinter {
+    private MealPrinter() {
+    }
+
+    /**
+     * Prints the meals as they are read, under a category header, or "No meals found.".
+     *
+     * @return the number of meals printed
+     */
+    public static long showMeals(PrintWriter out, MealRepository db, MealCategory category) {
+        long[] shown = {0};
+        try {
+            db.streamMealsByCategory(category, meal -> {
+                if (shown[0]++ == 0) { // the header only before the first meal
+                    out.printf("Category: %s%n", category.toString().toLowerCase());
+                }
+                meal.appendTo(out);
+                out.println();
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a PrintWriter doesn't throw
+        }
+        if (shown[0] == 0) {
+            out.println("No meals found.");
+        }
+        return shown[0];
+    }
+
+    /**
+     * Prints every weekday with its planned meals, e.g. "Monday", "Breakfast: yogurt", "Lunch: tomato salad".
+     *
+     * @param mealPlan in weekday, category order
+     */
+    public static void printPlan(PrintWriter out, List<PlanLineItem> mealPlan) {
+        int itemIndex = 0;
+        for (Weekday weekday : Weekday.values()) {
+            out.println(initCap(weekday.name()));
+            while (itemIndex < mealPlan.size() && mealPlan.get(itemIndex).getWeekday() == weekday) {
+                PlanLineItem item = mealPlan.get(itemIndex++);
+                out.printf("%s: %s%n", initCap(item.getMealCategory().toString()), item.getMealName());
+            }
+            out.println();
+        }
+    }
+
+    /**
+     * @param limit hits printed at most, the rest are only counted
+     */
+    public static void printSearchHits(PrintWriter out, List<SearchHit> hits, int limit) {
+        if (hits.isEmpty()) {
+            out.println("No meals found.");
+            return;
+        }
+        out.printf("Found %d meals:%n", hits.size());
+        hits.stream().limit(limit).forEach(hit ->
+                out.printf("%s (%s)%n", hit.mealName(), hit.category().toString().toLowerCase()));
+        if (hits.size() > limit) {
+            out.printf("... and %d more.%n", hits.size() - limit);
+        }
+    }
+
+    /**
+     * Prints the reported rejections followed by the summary line.
+     */
+    public static void printImportResult(PrintWriter out, ImportResult result) {
+        result.rejections().forEach(out::println);
+        if (result.rejected() > result.rejections().size()) {
+            out.println("Further rejected lines are only counted.");
+        }
+        out.println(result.summary());
+    }
+
+    /**
+     * @param limit matches printed at most, the rest are only counted
+     */
+    public static void printPantryMatches(PrintWriter out, List<PantryMatch> matches, int limit) {
+        if (matches.isEmpty()) {
+            out.println("No meals found.");
+            return;
+        }
+        out.printf("Found %d meals:%n", matches.size());
+        matches.stream().limit(limit).forEach(match -> out.printf(match.missing() == 0
+                        ? "%s (%s)%n" : "%s (%s), missing: %s%n", match.mealName(),
+                match.category().toString().toLowerCase(), String.join(", ", match.missingIngredients())));
+        if (matches.size() > limit) {
+            out.printf("... and %d more.%n", matches.size() - limit);
+        }
+    }
+}
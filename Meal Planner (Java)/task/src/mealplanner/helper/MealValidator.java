@@ -0,0 +1,22 @@
+package mealplanner.helper;
+
+import java.util.regex.Pattern;
+
+/**
+ * Input validation shared by the interactive add command and the bulk importer.
+ * The patterns are compiled once, {@code String.matches} would recompile them on every call.
+ */
+public class MealValidator {
+    private static final Pattern MEAL_NAME = Pattern.compile("[a-zA-Z]+\\s*[a-zA-Z]*");
+    // every ingredient may start with an amount, optionally followed by a unit: "200 g flour, 2 eggs, milk"
+    private static final Pattern INGREDIENTS = Pattern.compile(
+            "((\\d+(\\.\\d+)?\\s*)?[a-zA-Z][a-zA-Z ]*,\\s*)*(\\d+(\\.\\d+)?\\s*)?[a-zA-Z][a-zA-Z ]+");
+
+    public static boolean isValidMealName(String mealName) {
+        return MEAL_NAME.matcher(mealName).matches();
+    }
+
+    public static boolean isValidIngredients(String mealIngredients) {
+        return INGREDIENTS.matcher(mealIngredients).matches();
+    }
+}
@@ -0,0 +1,297 @@
+package mealplanner.helper;
+
+import mealplanner.controller.MealRepository;
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams a recipe file into the database without holding it in memory. Rows are validated with the same
+ * rules as the interactive add command and written in chunks, one transaction per chunk. A meal whose name
+ * is taken is rejected on its own, the rest of its chunk is stored.
+ * <p>
+ * Supported formats, picked by file extension:
+ * <ul>
+ *     <li>{@code .csv}: {@code category,meal,ingredients} with an optional header line. The ingredients are
+ *     either one quoted field ({@code "oats, milk"}) or the remaining columns of the row.</li>
+ *     <li>{@code .jsonl}, {@code .ndjson}, {@code .json}: one object per line,
+ *     {@code {"category": "breakfast", "meal": "oatmeal", "ingredients": ["oats", "milk"]}};
+ *     the ingredients may also be a single comma separated string.</li>
+ * </ul>
+ * Quoted CSV fields can't span lines. Nothing is printed: the reasons of the first rejections come back in the
+ * {@link ImportResult}.
+ */
+public class RecipeImporter {
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final int MAX_REPORTED_REJECTIONS = 20;
+
+    private final MealRepository db;
+    private final int chunkSize;
+    private final List<String> rejections = new ArrayList<>();
+    private long imported;
+    private long rejected;
+    private long elapsedNanos;
+
+    public RecipeImporter(MealRepository db, int chunkSize) {
+        this.db = db;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @throws IOException if the file can't be read; {@link #getResult()} then tells what was imported before
+     */
+    public ImportResult importFile(Path file) throws IOException {
+        String fileName = file.getFileName().toString().toLowerCase();
+        boolean json = fileName.endsWith(".jsonl") || fileName.endsWith(".ndjson") || fileName.endsWith(".json");
+
+        long start = System.nanoTime();
+        List<Meal> chunk = new ArrayList<>(chunkSize);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && !json && isCsvHeader(line))) {
+                    continue;
+                }
+                try {
+                    chunk.add(json ? parseJsonRow(line) : parseCsvRow(line));
+                } catch (IllegalArgumentException e) {
+                    reject(String.format("Line %d rejected: %s", lineNumber, e.getMessage()));
+                    continue;
+                }
+                if (chunk.size() == chunkSize) {
+                    flush(chunk);
+                }
+            }
+        }
+        flush(chunk);
+        elapsedNanos = System.nanoTime() - start;
+        return getResult();
+    }
+
+    private void flush(List<Meal> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        // the rest of the chunk is stored, only meals with a taken or repeated name are skipped
+        List<String> skipped = db.persistMeals(chunk);
+        imported += chunk.size() - skipped.size();
+        skipped.forEach(name -> reject(String.format("Meal \"%s\" rejected: the name is taken.", name)));
+        chunk.clear();
+    }
+
+    private void reject(String message) {
+        if (++rejected <= MAX_REPORTED_REJECTIONS) {
+            rejections.add(message);
+        }
+    }
+
+    public ImportResult getResult() {
+        return new ImportResult(imported, rejected, List.copyOf(rejections), elapsedNanos);
+    }
+
+    private static Meal toMeal(String category, String mealName, String ingredients) {
+        MealCategory mealCategory;
+        try {
+            mealCategory = MealCategory.valueOf(category.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("wrong meal category \"" + category + "\"");
+        }
+        mealName = mealName.trim();
+        if (!MealValidator.isValidMealName(mealName)) {
+            throw new IllegalArgumentException("wrong meal name format \"" + mealName + "\"");
+        }
+        ingredients = ingredients.trim();
+        if (!MealValidator.isValidIngredients(ingredients)) {
+            throw new IllegalArgumentException("wrong ingredients format \"" + ingredients + "\"");
+        }
+        return new Meal(mealCategory, mealName, ingredients);
+    }
+
+    private static boolean isCsvHeader(String line) {
+        return line.trim().toLowerCase().startsWith("category,");
+    }
+
+    static Meal parseCsvRow(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() < 3) {
+            throw new IllegalArgumentException("expected category, meal and ingredients");
+        }
+        String ingredients = fields.size() == 3
+                ? fields.get(2)
+                : String.join(", ", fields.subList(2, fields.size()));
+        return toMeal(fields.get(0), fields.get(1), ingredients);
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"'); // escaped quote
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    static Meal parseJsonRow(String line) {
+        Map<String, Object> object = new JsonLineParser(line).parseObject();
+        Object category = object.get("category");
+        Object mealName = object.get("meal");
+        Object ingredients = object.get("ingredients");
+        if (!(category instanceof String) || !(mealName instanceof String) || ingredients == null) {
+            throw new IllegalArgumentException("expected \"category\", \"meal\" and \"ingredients\"");
+        }
+        String joinedIngredients = ingredients instanceof List<?> list
+                ? String.join(", ", list.stream().map(String::valueOf).toList())
+                : ingredients.toString();
+        return toMeal((String) category, (String) mealName, joinedIngredients);
+    }
+
+    /**
+     * Just enough JSON for flat recipe objects: string values, arrays of strings, and scalars which are kept
+     * as their literal text.
+     */
+    private static class JsonLineParser {
+        private final String text;
+        private int position;
+
+        private JsonLineParser(String text) {
+            this.text = text;
+        }
+
+        private Map<String, Object> parseObject() {
+            Map<String, Object> object = new HashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            do {
+                String key = parseString();
+                expect(':');
+                object.put(key, parseValue());
+            } while (consumeIf(','));
+            expect('}');
+            return object;
+        }
+
+        private Object parseValue() {
+            char c = peek();
+            if (c == '"') {
+                return parseString();
+            }
+            if (c == '[') {
+                position++;
+                List<String> values = new ArrayList<>();
+                if (consumeIf(']')) {
+                    return values;
+                }
+                do {
+                    values.add(String.valueOf(parseValue()));
+                } while (consumeIf(','));
+                expect(']');
+                return values;
+            }
+            int start = position;
+            while (position < text.length() && ",}] \t".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("malformed JSON at column " + (position + 1));
+            }
+            return text.substring(start, position);
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("malformed JSON unicode escape");
+                        }
+                        sb.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> sb.append(escaped); // \" \\ \/
+                }
+            }
+            throw new IllegalArgumentException("unterminated JSON string");
+        }
+
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("unexpected end of JSON line");
+            }
+            return text.charAt(position);
+        }
+
+        private boolean consumeIf(char c) {
+            if (position < text.length() && peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException(
+                        String.format("malformed JSON, expected '%c' at column %d", c, position + 1));
+            }
+            position++;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package mealplanner.helper;
+
+import mealplanner.controller.MealCatalog;
+import mealplanner.controller.Storage;
+import mealplanner.export.ShoppingListExporter;
+import mealplanner.metrics.Histogram;
+import mealplanner.model.*;
+import mealplanner.planner.PlanConstraints;
+import mealplanner.planner.PlanSolution;
+import mealplanner.planner.PlanSolver;
+import mealplanner.search.MealIndex;
+import mealplanner.search.MealQuery;
+import mealplanner.search.PantryMatcher;
+import mealplanner.search.SearchCatalog;
+import mealplanner.search.SearchHit;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Runs planner commands from a script, one command per line, without prompts. Arguments follow the command
+ * word and are separated by {@code |}:
+ * <pre>
+ * # comment
+ * add breakfast | oatmeal | 100 g oats, 200 ml milk
+ * show breakfast
+ * plan monday | breakfast | oatmeal     (one slot of this week's plan)
+ * plan                                  (prints this week's plan)
+ * autoplan 3                            (days before a meal may repeat, optional)
+ * save shopping.txt
+ * import recipes.csv
+ * search eggs, tomato | milk | sal      (required ingredients | excluded ingredients | name prefix)
+ * pantry eggs, milk, flour | 1         (ingredients at hand | most missing ingredients, optional)
+ * </pre>
+ * A failing line is reported and the script goes on. Output is buffered and written when the script ends or
+ * the buffer fills; the summary gives the latency of every command.
+ */
+public class ScriptRunner {
+    private final Storage db;
+    private final MealCatalog catalog;
+    private final MealIndex index;
+    private final PantryMatcher pantryMatcher;
+    private final PrintWriter out;
+    private final Map<String, Histogram> latencies = new TreeMap<>();
+    private long executed;
+    private long failed;
+
+    public ScriptRunner(Storage db, PrintWriter out) {
+        this.db = db;
+        this.catalog = MealCatalog.create(db);
+        SearchCatalog searchCatalog = new SearchCatalog(db);
+        this.index = new MealIndex(searchCatalog);
+        this.pantryMatcher = new PantryMatcher(searchCatalog);
+        this.out = out;
+    }
+
+    public void run(BufferedReader script) throws IOException {
+        String line;
+        long lineNumber = 0;
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf(' ');
+            String command = (separator < 0 ? line : line.substring(0, separator)).toLowerCase();
+            String[] arguments = separator < 0
+                    ? new String[0]
+                    : line.substring(separator + 1).trim().split("\\s*\\|\\s*");
+
+            long start = System.nanoTime();
+            try {
+                execute(command, arguments);
+            } catch (IllegalArgumentException e) {
+                failed++;
+                out.printf("Line %d rejected: %s%n", lineNumber, e.getMessage());
+            }
+            latencies.computeIfAbsent(command, c -> new Histogram()).record(System.nanoTime() - start);
+            executed++;
+        }
+        out.flush();
+    }
+
+    private void execute(String command, String[] arguments) {
+        switch (command) {
+            case "add" -> add(arguments);
+            case "show" -> show(arguments);
+            case "plan" -> plan(arguments);
+            case "autoplan" -> autoplan(arguments);
+            case "save" -> save(arguments);
+            case "import" -> importRecipes(arguments);
+            case "search" -> search(arguments);
+            case "pantry" -> pantry(arguments);
+            default -> throw new IllegalArgumentException("unknown command \"" + command + "\"");
+        }
+    }
+
+    private void add(String[] arguments) {
+        expectArguments(arguments, 3, "add <category> | <meal> | <ingredients>");
+        MealCategory category = parseCategory(arguments[0]);
+        if (!MealValidator.isValidMealName(arguments[1])) {
+            throw new IllegalArgumentException("wrong meal name format \"" + arguments[1] + "\"");
+        }
+        if (!MealValidator.isValidIngredients(arguments[2])) {
+            throw new IllegalArgumentException("wrong ingredients format \"" + arguments[2] + "\"");
+        }
+        if (db.persistMeal(new Meal(category, arguments[1], arguments[2]))) {
+            out.println("The meal has been added!");
+        } else {
+            out.println("A meal with this name already exists.");
+        }
+    }
+
+    private void show(String[] arguments) {
+        expectArguments(arguments, 1, "show <category>");
+        MealPrinter.showMeals(out, db, parseCategory(arguments[0]));
+    }
+
+    private void plan(String[] arguments) {
+        PlanKey planKey = PlanKey.currentWeek(PlanKey.DEFAULT_HOUSEHOLD);
+        if (arguments.length == 0) {
+            MealPrinter.printPlan(out, db.getMealPlan(planKey));
+            return;
+        }
+        expectArguments(arguments, 3, "plan <weekday> | <category> | <meal>");
+        Weekday weekday;
+        try {
+            weekday = Weekday.valueOf(arguments[0].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("wrong day \"" + arguments[0] + "\"");
+        }
+        MealCategory category = parseCategory(arguments[1]);
+        if (catalog.findMeal(category, arguments[2]) == null) {
+            throw new IllegalArgumentException(String.format("no %s named \"%s\"",
+                    category.toString().toLowerCase(), arguments[2]));
+        }
+        db.replaceSlot(planKey, new PlanLineItem(weekday, category, arguments[2]));
+    }
+
+    private void autoplan(String[] arguments) {
+        int noRepeatDays;
+        try {
+            noRepeatDays = arguments.length > 0 ? Integer.parseInt(arguments[0]) : 0;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("wrong number of days \"" + arguments[0] + "\"");
+        }
+        PlanSolution solution = PlanSolver.create(catalog)
+                .solve(new PlanConstraints(noRepeatDays, Set.of(), Set.of(), System.nanoTime()));
+        if (solution == null) {
+            out.println("Unable to build a plan under these constraints.");
+            return;
+        }
+        PlanKey planKey = PlanKey.currentWeek(PlanKey.DEFAULT_HOUSEHOLD);
+        db.persistPlan(planKey, solution.getPlanLineItems());
+        MealPrinter.printPlan(out, db.getMealPlan(planKey));
+    }
+
+    private void save(String[] arguments) {
+        expectArguments(arguments, 1, "save <file>");
+        PlanKey planKey = db.getLatestPlan(PlanKey.DEFAULT_HOUSEHOLD);
+        if (planKey == null) {
+            out.println("Unable to save. Plan your meals first.");
+            return;
+        }
+        try {
+            new ShoppingListExporter(db).export(List.of(planKey), Path.of(arguments[0]));
+            out.println("Saved!");
+        } catch (IOException | InvalidPathException e) {
+            out.printf("Unable to save %s: %s%n", arguments[0], e.getMessage());
+        }
+    }
+
+    private void importRecipes(String[] arguments) {
+        expectArguments(arguments, 1, "import <file>");
+        RecipeImporter importer = new RecipeImporter(db, RecipeImporter.DEFAULT_CHUNK_SIZE);
+        try {
+            importer.importFile(Path.of(arguments[0]));
+        } catch (IOException | InvalidPathException e) {
+            out.printf("Unable to read %s: %s%n", arguments[0], e.getMessage());
+        }
+        MealPrinter.printImportResult(out, importer.getResult());
+    }
+
+    private void search(String[] arguments) {
+        if (arguments.length > 3) {
+            throw new IllegalArgumentException("expected search <ingredients> | <excluded ingredients> | <name prefix>");
+        }
+        List<SearchHit> hits = index.search(new MealQuery(
+                ingredientSet(arguments, 0), ingredientSet(arguments, 1), arguments.length > 2 ? arguments[2] : ""));
+        MealPrinter.printSearchHits(out, hits, Integer.MAX_VALUE); // a script prints every hit
+    }
+
+    private void pantry(String[] arguments) {
+        if (arguments.length == 0 || arguments.length > 2) {
+            throw new IllegalArgumentException("expected pantry <ingredients> | <most missing ingredients>");
+        }
+        int maxMissing;
+        try {
+            maxMissing = arguments.length > 1 ? Integer.parseInt(arguments[1]) : 0;
+        } catch (NumberFormatException e) {
+            maxMissing = -1;
+        }
+        if (maxMissing < 0) {
+            throw new IllegalArgumentException("wrong number of ingredients \"" + arguments[1] + "\"");
+        }
+        MealPrinter.printPantryMatches(out, pantryMatcher.match(ingredientSet(arguments, 0), maxMissing),
+                Integer.MAX_VALUE);
+    }
+
+    private static Set<String> ingredientSet(String[] arguments, int index) {
+        Set<String> ingredients = new HashSet<>();
+        if (index < arguments.length) {
+            for (String ingredient : arguments[index].split(",")) {
+                if (!ingredient.isBlank()) {
+                    ingredients.add(ingredient.trim());
+                }
+            }
+        }
+        return ingredients;
+    }
+
+    private static MealCategory parseCategory(String category) {
+        try {
+            return MealCategory.valueOf(category.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("wrong meal category \"" + category + "\"");
+        }
+    }
+
+    private static void expectArguments(String[] arguments, int count, String usage) {
+        if (arguments.length != count || (count > 0 && arguments[0].isEmpty())) {
+            throw new IllegalArgumentException("expected " + usage);
+        }
+    }
+
+    public long getExecuted() {
+        return executed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return per command: count, mean, 95th percentile and maximum latency in milliseconds
+     */
+    public String summary() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Executed %d commands, %d rejected.", executed, failed));
+        lines.add(String.format("%-10s %8s %10s %10s %10s", "command", "count", "mean ms", "p95 ms", "max ms"));
+        latencies.forEach((command, latency) -> lines.add(String.format("%-10s %8d %10.3f %10.3f %10.3f", command,
+                latency.getCount(), latency.getMean() / 1e6, latency.getPercentile(0.95) / 1e6,
+                latency.getMax() / 1e6)));
+        return String.join(System.lineSeparator(), lines);
+    }
+}
@@ -0,0 +1,93 @@
+package mealplanner.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls of one operation, e.g. a {@code Database} method or an SQL statement: how long they took, how many
+ * rows they read or wrote, and how many failed.
+ */
+public class LatencyMetric {
+    private final String name;
+    private final Histogram latencyNanos = new Histogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    LatencyMetric(String name) {
+        this.name = name;
+    }
+
+    public void record(long elapsedNanos, long rowCount) {
+        latencyNanos.record(elapsedNanos);
+        rows.add(rowCount);
+    }
+
+    public void addRows(long rowCount) {
+        rows.add(rowCount);
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Starts timing one call, which is recorded when the sample is closed.
+     */
+    public Sample start() {
+        return new Sample(this);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Histogram getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    void reset() {
+        latencyNanos.reset();
+        rows.reset();
+        errors.reset();
+    }
+
+    /**
+     * One timed call, meant for try-with-resources.
+     */
+    public static class Sample implements AutoCloseable {
+        private final LatencyMetric metric;
+        private final long start = System.nanoTime();
+        private long rowCount;
+        private boolean failed;
+
+        private Sample(LatencyMetric metric) {
+            this.metric = metric;
+        }
+
+        public void rows(long rowCount) {
+            this.rowCount = rowCount;
+        }
+
+        /**
+         * Counts the call as an error as well, its latency is still recorded.
+         */
+        public void failed() {
+            failed = true;
+        }
+
+        @Override
+        public void close() {
+            metric.record(System.nanoTime() - start, rowCount);
+            if (failed) {
+                metric.recordError();
+            }
+        }
+    }
+}
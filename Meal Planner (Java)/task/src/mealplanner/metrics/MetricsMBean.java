@@ -0,0 +1,104 @@
+package mealplanner.metrics;
+
+import javax.management.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of a {@link MetricsRegistry}. Metrics are created while the application runs, so the attributes
+ * are dynamic: per latency metric {@code <name>.calls}, {@code .rows}, {@code .errors}, {@code .meanMillis},
+ * {@code .p50Millis}, {@code .p95Millis}, {@code .p99Millis} and {@code .maxMillis}, plus one attribute per gauge.
+ */
+class MetricsMBean implements DynamicMBean {
+    private static final String[] LATENCY_ATTRIBUTES =
+            {"calls", "rows", "errors", "meanMillis", "p50Millis", "p95Millis", "p99Millis", "maxMillis"};
+
+    private final MetricsRegistry registry;
+
+    MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Map<String, Number> gauges = registry.readGauges();
+        if (gauges.containsKey(attribute)) {
+            return gauges.get(attribute);
+        }
+        int separator = attribute.lastIndexOf('.');
+        LatencyMetric metric = separator < 0 ? null : registry.getLatencies().get(attribute.substring(0, separator));
+        if (metric == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        Histogram latency = metric.getLatencyNanos();
+        return switch (attribute.substring(separator + 1)) {
+            case "calls" -> latency.getCount();
+            case "rows" -> metric.getRows();
+            case "errors" -> metric.getErrors();
+            case "meanMillis" -> latency.getMean() / 1e6;
+            case "p50Millis" -> latency.getPercentile(0.5) / 1e6;
+            case "p95Millis" -> latency.getPercentile(0.95) / 1e6;
+            case "p99Millis" -> latency.getPercentile(0.99) / 1e6;
+            case "maxMillis" -> latency.getMax() / 1e6;
+            default -> throw new AttributeNotFoundException(attribute);
+        };
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // left out, as the contract allows
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        return switch (actionName) {
+            case "snapshot" -> registry.snapshot();
+            case "reset" -> {
+                registry.reset();
+                yield null;
+            }
+            default -> throw new ReflectionException(new NoSuchMethodException(actionName));
+        };
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : registry.getLatencies().keySet()) {
+            for (String suffix : LATENCY_ATTRIBUTES) {
+                boolean millis = suffix.endsWith("Millis");
+                attributes.add(new MBeanAttributeInfo(name + "." + suffix,
+                        millis ? "java.lang.Double" : "java.lang.Long", suffix, true, false, false));
+            }
+        }
+        registry.readGauges().forEach((name, value) -> attributes.add(new MBeanAttributeInfo(name,
+                value.getClass().getName(), "gauge", true, false, false)));
+        MBeanOperationInfo[] operations = {
+                new MBeanOperationInfo("snapshot", "All metrics as a text table", new MBeanParameterInfo[0],
+                        "java.lang.String", MBeanOperationInfo.INFO),
+                new MBeanOperationInfo("reset", "Clears the latency metrics", new MBeanParameterInfo[0],
+                        "void", MBeanOperationInfo.ACTION),
+        };
+        return new MBeanInfo(MetricsMBean.class.getName(), "Meal planner metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+    }
+}
@@ -0,0 +1,136 @@
+package mealplanner.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide metrics: latency metrics created on first use by name, and gauges that read a current value,
+ * e.g. a cache hit rate.
+ * <p>
+ * The registry can be published as the JMX MBean {@value #OBJECT_NAME}, where every metric shows up as a set
+ * of attributes, and dumped as a text table, once or periodically.
+ */
+public class MetricsRegistry {
+    public static final String OBJECT_NAME = "mealplanner:type=Metrics";
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    private final Map<String, LatencyMetric> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+    private boolean registeredInJmx;
+
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    public LatencyMetric latency(String name) {
+        LatencyMetric metric = latencies.get(name); // no lambda allocation on the hot path
+        return metric != null ? metric : latencies.computeIfAbsent(name, LatencyMetric::new);
+    }
+
+    /**
+     * Registers a gauge, replacing an earlier one of the same name.
+     */
+    public void gauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Registers {@code <prefix>.hits}, {@code <prefix>.misses} and {@code <prefix>.hitRate}.
+     */
+    public void hitRateGauges(String prefix, Supplier<Long> hits, Supplier<Long> misses) {
+        gauge(prefix + ".hits", hits::get);
+        gauge(prefix + ".misses", misses::get);
+        gauge(prefix + ".hitRate", () -> {
+            long hitCount = hits.get();
+            long total = hitCount + misses.get();
+            return total == 0 ? 0.0 : (double) hitCount / total;
+        });
+    }
+
+    Map<String, LatencyMetric> getLatencies() {
+        return new TreeMap<>(latencies);
+    }
+
+    Map<String, Number> readGauges() {
+        Map<String, Number> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.get()));
+        return values;
+    }
+
+    public void reset() {
+        latencies.values().forEach(LatencyMetric::reset);
+    }
+
+    /**
+     * Publishes the registry to the platform MBean server, once per process.
+     */
+    public synchronized void registerMBean() {
+        if (registeredInJmx) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new MetricsMBean(this), new ObjectName(OBJECT_NAME));
+            registeredInJmx = true;
+        } catch (JMException e) {
+            System.err.println("Unable to register the metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints a snapshot every {@code intervalSeconds} on a daemon thread.
+     *
+     * @return the scheduler, to be shut down when dumping should stop
+     */
+    public ScheduledExecutorService startPeriodicDump(long intervalSeconds, PrintStream out) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            out.print(snapshot());
+            out.flush();
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        return scheduler;
+    }
+
+    /**
+     * @return all metrics as a text table, latencies in milliseconds
+     */
+    public String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Metrics at %s%n", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+        sb.append(String.format("%10s %10s %7s %9s %9s %9s %9s %9s  %s%n",
+                "calls", "rows", "errors", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms", "operation"));
+        for (LatencyMetric metric : getLatencies().values()) {
+            Histogram latency = metric.getLatencyNanos();
+            sb.append(String.format("%10d %10d %7d %9.3f %9.3f %9.3f %9.3f %9.3f  %s%n",
+                    latency.getCount(), metric.getRows(), metric.getErrors(), latency.getMean() / 1e6,
+                    latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.95) / 1e6,
+                    latency.getPercentile(0.99) / 1e6, latency.getMax() / 1e6, abbreviate(metric.getName())));
+        }
+        readGauges().forEach((name, value) -> sb.append(value instanceof Double
+                ? String.format("%s = %.3f%n", name, value)
+                : String.format("%s = %s%n", name, value)));
+        return sb.toString();
+    }
+
+    // SQL statements can be long, the start identifies them well enough in a table
+    private static String abbreviate(String name) {
+        String singleLine = name.replaceAll("\\s+", " ");
+        return singleLine.length() <= 120 ? singleLine : singleLine.substring(0, 117) + "...";
+    }
+}
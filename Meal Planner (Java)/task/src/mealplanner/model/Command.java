@@ -1,5 +1,5 @@
 package mealplanner.model;
 
 public enum Command {
-    ADD, SHOW, PLAN, SAVE, EXIT
+    ADD, SHOW, PLAN, SAVE, IMPORT, AUTOPLAN, EDIT, SWAP, SEARCH, PANTRY, EXIT
 }
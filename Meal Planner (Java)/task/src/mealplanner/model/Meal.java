@@ -1,35 +1,116 @@
 package mealplanner.model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Meal {
+    private static final Pattern INGREDIENT_SEPARATOR = Pattern.compile(",\\s*");
+    // "eggs", "2 eggs", "200 g flour", "1.5kg potatoes"
+    private static final Pattern MEASURED_INGREDIENT = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(?:(\\S+)\\s+)?(.+)");
     private final MealCategory mealCategory;
     private final String mealName;
     private final String[] mealIngredients;
+    private final int[] ingredientIds;
+    private final double[] amounts;
+    private final Unit[] units;
 
+    /**
+     * @param mealIngredients comma separated, each ingredient optionally preceded by an amount and a unit,
+     *                        e.g. "200 g flour, 2 eggs, milk"; without a unit the amount counts pieces,
+     *                        without an amount it is one piece
+     */
     public Meal(MealCategory mealCategory, String mealName, String mealIngredients) {
         this.mealCategory = mealCategory;
         this.mealName = mealName;
-        this.mealIngredients = mealIngredients.split(",\\s*");
+        this.mealIngredients = INGREDIENT_SEPARATOR.split(mealIngredients);
+        this.ingredientIds = null;
+        this.amounts = new double[this.mealIngredients.length];
+        this.units = new Unit[this.mealIngredients.length];
+        for (int i = 0; i < this.mealIngredients.length; i++) {
+            parseIngredient(i, this.mealIngredients[i].trim());
+        }
     }
 
+    /**
+     * A meal with one piece of every ingredient.
+     */
     public Meal(MealCategory mealCategory, String mealName, String[] mealIngredients) {
         this.mealCategory = mealCategory;
         this.mealName = mealName;
         this.mealIngredients = mealIngredients;
+        this.ingredientIds = null;
+        this.amounts = new double[mealIngredients.length];
+        this.units = new Unit[mealIngredients.length];
+        Arrays.fill(amounts, 1);
+        Arrays.fill(units, Unit.PIECE);
+    }
+
+    /**
+     * @param ingredientIds ids from the ingredient dictionary, parallel to {@code mealIngredients}
+     * @param amounts       in the base unit, parallel to {@code mealIngredients}
+     * @param units         parallel to {@code mealIngredients}
+     */
+    public Meal(MealCategory mealCategory, String mealName, String[] mealIngredients, int[] ingredientIds,
+                double[] amounts, Unit[] units) {
+        this.mealCategory = mealCategory;
+        this.mealName = mealName;
+        this.mealIngredients = mealIngredients;
+        this.ingredientIds = ingredientIds;
+        this.amounts = amounts;
+        this.units = units;
+    }
+
+    private void parseIngredient(int index, String ingredient) {
+        Matcher matcher = MEASURED_INGREDIENT.matcher(ingredient);
+        if (!matcher.matches()) {
+            mealIngredients[index] = ingredient;
+            amounts[index] = 1;
+            units[index] = Unit.PIECE;
+            return;
+        }
+        double amount = Double.parseDouble(matcher.group(1));
+        String unitWord = matcher.group(2);
+        Unit unit = unitWord == null ? null : Unit.forWord(unitWord);
+        if (unit == null) { // "2 large eggs": the word after the amount belongs to the name
+            mealIngredients[index] = unitWord == null ? matcher.group(3) : unitWord + " " + matcher.group(3);
+            amounts[index] = amount;
+            units[index] = Unit.PIECE;
+        } else {
+            mealIngredients[index] = matcher.group(3);
+            amounts[index] = amount * Unit.factorOf(unitWord);
+            units[index] = unit;
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        //sb.append(String.format("Category: %s%n", this.mealCategory.toString().toLowerCase()));
-        sb.append(String.format("Name: %s%n", this.mealName));
-        sb.append("Ingredients:\n");
-        Arrays.stream(this.mealIngredients).forEach(i -> sb.append(String.format("%s%n", i)));
-
+        try {
+            appendTo(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringBuilder doesn't throw
+        }
         return sb.toString();
     }
 
+    /**
+     * Appends the text of {@link #toString()} without building it first, e.g. straight into a writer.
+     */
+    public void appendTo(Appendable out) throws IOException {
+        String lineSeparator = System.lineSeparator();
+        out.append("Name: ").append(mealName).append(lineSeparator);
+        out.append("Ingredients:\n");
+        for (int i = 0; i < mealIngredients.length; i++) {
+            if (units[i] != Unit.PIECE || amounts[i] != 1) {
+                out.append(units[i].format(amounts[i])).append(' ');
+            }
+            out.append(mealIngredients[i]).append(lineSeparator);
+        }
+    }
+
     public MealCategory getMealCategory() {
         return mealCategory;
     }
@@ -41,4 +122,22 @@ public class Meal {
     public String[] getMealIngredients() {
         return mealIngredients;
     }
+
+    /**
+     * @return the ingredient ids, or null for a meal that wasn't read from the database
+     */
+    public int[] getIngredientIds() {
+        return ingredientIds;
+    }
+
+    /**
+     * @return the amount of every ingredient, in its unit from {@link #getUnits()}
+     */
+    public double[] getAmounts() {
+        return amounts;
+    }
+
+    public Unit[] getUnits() {
+        return units;
+    }
 }
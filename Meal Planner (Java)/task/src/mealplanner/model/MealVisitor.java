@@ -0,0 +1,11 @@
+package mealplanner.model;
+
+import java.io.IOException;
+
+/**
+ * Receives meals one by one as they are read, so that a category never has to be held in memory as a whole.
+ */
+@FunctionalInterface
+public interface MealVisitor {
+    void visit(Meal meal) throws IOException;
+}
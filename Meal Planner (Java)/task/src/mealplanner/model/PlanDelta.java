@@ -0,0 +1,10 @@
+package mealplanner.model;
+
+import java.util.List;
+
+/**
+ * How an update changed the meals of a stored plan: the ids of the meals that left it and of the meals that
+ * came in, one entry per slot. A swap of two slots removes and adds the same meals.
+ */
+public record PlanDelta(PlanKey planKey, List<Integer> removedMealIds, List<Integer> addedMealIds) {
+}
@@ -0,0 +1,17 @@
+package mealplanner.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Identifies one stored plan: the week of a household starting on {@code weekStart}, a Monday.
+ */
+public record PlanKey(int householdId, LocalDate weekStart) {
+    // the interactive planner works on this household
+    public static final int DEFAULT_HOUSEHOLD = 0;
+
+    public static PlanKey currentWeek(int householdId) {
+        return new PlanKey(householdId, LocalDate.now().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)));
+    }
+}
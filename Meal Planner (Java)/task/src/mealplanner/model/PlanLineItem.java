@@ -0,0 +1,25 @@
+package mealplanner.model;
+
+public class PlanLineItem {
+    private final Weekday weekday;
+    private final MealCategory mealCategory;
+    private final String mealName;
+
+    public PlanLineItem(Weekday weekday, MealCategory mealCategory, String mealName) {
+        this.weekday = weekday;
+        this.mealCategory = mealCategory;
+        this.mealName = mealName;
+    }
+
+    public Weekday getWeekday() {
+        return weekday;
+    }
+
+    public MealCategory getMealCategory() {
+        return mealCategory;
+    }
+
+    public String getMealName() {
+        return mealName;
+    }
+}
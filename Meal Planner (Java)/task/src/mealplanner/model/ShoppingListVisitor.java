@@ -0,0 +1,15 @@
+package mealplanner.model;
+
+import java.io.IOException;
+
+/**
+ * Receives the items of a shopping list one by one as they are read, so that a list never has to be
+ * held in memory as a whole.
+ */
+@FunctionalInterface
+public interface ShoppingListVisitor {
+    /**
+     * @param amount in the base unit
+     */
+    void visit(String ingredient, double amount, Unit unit) throws IOException;
+}
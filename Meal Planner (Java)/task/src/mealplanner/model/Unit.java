@@ -0,0 +1,102 @@
+package mealplanner.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base units ingredient amounts are stored and summed in. Amounts entered in other units are converted when
+ * a meal is created, e.g. 1.5 kg becomes 1500 g, so amounts of the same ingredient and unit can be added up
+ * by the database.
+ */
+public enum Unit {
+    PIECE("pc"),
+    GRAM("g"),
+    MILLILITER("ml");
+
+    private static final Map<String, Unit> UNITS_BY_WORD = new HashMap<>();
+    private static final Map<String, Double> FACTORS_BY_WORD = new HashMap<>();
+
+    static {
+        word(PIECE, 1, "pc", "pcs", "piece", "pieces");
+        word(GRAM, 1, "g", "gram", "grams");
+        word(GRAM, 1000, "kg", "kilogram", "kilograms");
+        word(GRAM, 0.001, "mg");
+        word(GRAM, 28.349523125, "oz");
+        word(GRAM, 453.59237, "lb", "lbs");
+        word(MILLILITER, 1, "ml");
+        word(MILLILITER, 10, "cl");
+        word(MILLILITER, 100, "dl");
+        word(MILLILITER, 1000, "l", "liter", "liters", "litre", "litres");
+        word(MILLILITER, 5, "tsp");
+        word(MILLILITER, 15, "tbsp");
+        word(MILLILITER, 240, "cup", "cups");
+    }
+
+    private final String symbol;
+
+    Unit(String symbol) {
+        this.symbol = symbol;
+    }
+
+    private static void word(Unit unit, double factor, String... words) {
+        for (String word : words) {
+            UNITS_BY_WORD.put(word, unit);
+            FACTORS_BY_WORD.put(word, factor);
+        }
+    }
+
+    /**
+     * @return the unit the word measures in, e.g. {@link #GRAM} for "kg", or null if the word isn't a unit
+     */
+    public static Unit forWord(String word) {
+        return UNITS_BY_WORD.get(word.toLowerCase());
+    }
+
+    /**
+     * @return how many base units one of the word's unit is, e.g. 1000 for "kg"
+     */
+    public static double factorOf(String word) {
+        return FACTORS_BY_WORD.get(word.toLowerCase());
+    }
+
+    /**
+     * @return the unit stored as the symbol, see {@link #getSymbol()}
+     */
+    public static Unit forSymbol(String symbol) {
+        for (Unit unit : values()) {
+            if (unit.symbol.equals(symbol)) {
+                return unit;
+            }
+        }
+        throw new IllegalArgumentException("Unknown unit " + symbol);
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return the amount in the unit it is shown in, 1500 g are shown as 1.5 kg
+     */
+    public double displayAmount(double amount) {
+        return this != PIECE && amount >= 1000 ? amount / 1000 : amount;
+    }
+
+    public String displaySymbol(double amount) {
+        if (this == PIECE || amount < 1000) {
+            return symbol;
+        }
+        return this == GRAM ? "kg" : "l";
+    }
+
+    /**
+     * @return e.g. "1.5 kg", "200 g", and just the number of pieces, "2"
+     */
+    public String format(double amount) {
+        String number = BigDecimal.valueOf(displayAmount(amount)).setScale(3, RoundingMode.HALF_UP)
+                .stripTrailingZeros().toPlainString();
+        return this == PIECE ? number : number + " " + displaySymbol(amount);
+    }
+}
@@ -0,0 +1,117 @@
+package mealplanner.planner;
+
+import mealplanner.controller.PlanRepository;
+import mealplanner.controller.Storage;
+import mealplanner.model.PlanKey;
+import mealplanner.model.PlanLineItem;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates and stores the plans of many households for one week in parallel.
+ * <p>
+ * The household range is split fork-join style into chunks; a worker solves every household of its chunk
+ * with the shared {@link PlanSolver} and stores the chunk in one transaction. The number of workers is capped
+ * by the connection pool size, so a worker never waits for a connection.
+ * Each household gets its own tie-breaking seed, so households with the same constraints get different weeks,
+ * and generating the same week again reproduces them.
+ */
+public class PlanBatchGenerator {
+    private static final int CHUNK_SIZE = 256;
+
+    private final PlanRepository db;
+    private final PlanSolver solver;
+    private final int parallelism;
+    private final AtomicLong planned = new AtomicLong();
+    private final AtomicLong unsatisfiable = new AtomicLong();
+    private long elapsedNanos;
+
+    public PlanBatchGenerator(PlanRepository db, PlanSolver solver, int parallelism) {
+        this.db = db;
+        this.solver = solver;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * One worker per core, at most as many as {@code pool.maxSize} in {@code db.properties}.
+     */
+    public static PlanBatchGenerator create(Storage db, PlanSolver solver) {
+        return new PlanBatchGenerator(db, solver, Math.min(Runtime.getRuntime().availableProcessors(),
+                Integer.parseInt(db.getSetting("pool.maxSize", "10"))));
+    }
+
+    /**
+     * Plans households {@code firstHousehold} to {@code firstHousehold + households - 1}, replacing their plans
+     * for the week.
+     */
+    public void generate(int firstHousehold, int households, LocalDate weekStart, PlanConstraints constraints) {
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ChunkTask(firstHousehold, firstHousehold + households, weekStart, constraints));
+        } finally {
+            pool.shutdown();
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    public long getPlanned() {
+        return planned.get();
+    }
+
+    public long getUnsatisfiable() {
+        return unsatisfiable.get();
+    }
+
+    public String summary() {
+        double seconds = elapsedNanos / 1e9;
+        return String.format("Planned %d households in %.2f s (%.0f plans/s), %d without a feasible plan.",
+                planned.get(), seconds, seconds > 0 ? planned.get() / seconds : 0, unsatisfiable.get());
+    }
+
+    @SuppressWarnings("serial") // a fork/join task, never serialized
+    private class ChunkTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final LocalDate weekStart;
+        private final PlanConstraints constraints;
+
+        private ChunkTask(int from, int to, LocalDate weekStart, PlanConstraints constraints) {
+            this.from = from;
+            this.to = to;
+            this.weekStart = weekStart;
+            this.constraints = constraints;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(from, middle, weekStart, constraints),
+                        new ChunkTask(middle, to, weekStart, constraints));
+                return;
+            }
+
+            Map<PlanKey, List<PlanLineItem>> plans = new LinkedHashMap<>();
+            for (int household = from; household < to; household++) {
+                long seed = constraints.getSeed() * 31 + household * 7919L + weekStart.toEpochDay();
+                PlanSolution solution = solver.solve(constraints.withSeed(seed));
+                if (solution == null) {
+                    unsatisfiable.incrementAndGet();
+                } else {
+                    plans.put(new PlanKey(household, weekStart), solution.getPlanLineItems());
+                }
+            }
+            if (!plans.isEmpty()) {
+                db.persistPlans(plans);
+                planned.addAndGet(plans.size());
+            }
+        }
+    }
+}
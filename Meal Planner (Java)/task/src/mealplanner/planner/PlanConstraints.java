@@ -0,0 +1,50 @@
+package mealplanner.planner;
+
+import java.util.Set;
+
+/**
+ * What an automatically generated week has to respect.
+ */
+public class PlanConstraints {
+    private final int noRepeatDays;
+    private final Set<String> requiredIngredients;
+    private final Set<String> excludedIngredients;
+    private final long seed;
+
+    /**
+     * @param noRepeatDays        a meal may only come back once this many days have passed, 0 or 1 for no limit
+     * @param requiredIngredients ingredients that have to be used at least once during the week
+     * @param excludedIngredients ingredients no planned meal may contain
+     * @param seed                breaks ties between equally good meals, different seeds give different weeks
+     */
+    public PlanConstraints(int noRepeatDays, Set<String> requiredIngredients, Set<String> excludedIngredients,
+                           long seed) {
+        this.noRepeatDays = noRepeatDays;
+        this.requiredIngredients = requiredIngredients;
+        this.excludedIngredients = excludedIngredients;
+        this.seed = seed;
+    }
+
+    public int getNoRepeatDays() {
+        return noRepeatDays;
+    }
+
+    public Set<String> getRequiredIngredients() {
+        return requiredIngredients;
+    }
+
+    public Set<String> getExcludedIngredients() {
+        return excludedIngredients;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the same constraints with another tie-breaking seed
+     */
+    public PlanConstraints withSeed(long seed) {
+        return new PlanConstraints(noRepeatDays, requiredIngredients, excludedIngredients, seed);
+    }
+}
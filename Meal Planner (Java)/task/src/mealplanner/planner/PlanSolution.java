@@ -0,0 +1,29 @@
+package mealplanner.planner;
+
+import mealplanner.model.PlanLineItem;
+
+import java.util.List;
+
+public class PlanSolution {
+    private final List<PlanLineItem> planLineItems;
+    private final int distinctIngredients;
+
+    PlanSolution(List<PlanLineItem> planLineItems, int distinctIngredients) {
+        this.planLineItems = planLineItems;
+        this.distinctIngredients = distinctIngredients;
+    }
+
+    /**
+     * @return the week in weekday, category order
+     */
+    public List<PlanLineItem> getPlanLineItems() {
+        return planLineItems;
+    }
+
+    /**
+     * @return the number of lines the shopping list for this week will have
+     */
+    public int getDistinctIngredients() {
+        return distinctIngredients;
+    }
+}
@@ -0,0 +1,297 @@
+package mealplanner.planner;
+
+import mealplanner.controller.MealCatalog;
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.model.PlanLineItem;
+import mealplanner.model.Weekday;
+
+import java.util.*;
+
+/**
+ * Builds a week of meals under {@link PlanConstraints} while keeping the shopping list short, i.e. minimizing
+ * the number of distinct ingredients across the 21 planned meals.
+ * <p>
+ * The catalog is translated once into primitive arrays: per category the candidate meals, per candidate its
+ * distinct ingredients as dense indices. A greedy pass fills the week slot by slot, then a local search
+ * replaces single slots as long as that shrinks the ingredient count, for at most {@value #MAX_IMPROVEMENT_PASSES}
+ * passes over the week. The result depends only on the catalog and the constraints, never on timing.
+ * The solver is immutable after construction and can serve many {@link #solve} calls in parallel.
+ */
+public class PlanSolver {
+    private static final int DAYS = Weekday.values().length;
+    private static final int CATEGORIES = MealCategory.values().length;
+    private static final int MAX_IMPROVEMENT_PASSES = 20;
+
+    private final List<List<Meal>> mealsByCategory;
+    private final int[][][] ingredients; // [category][candidate] -> distinct dense ingredient indices
+    private final Map<String, Integer> denseIndexByName = new HashMap<>();
+    private final int ingredientCount;
+
+    /**
+     * @param mealsByCategory the catalog, indexed by {@link MealCategory#ordinal()}
+     */
+    public PlanSolver(List<List<Meal>> mealsByCategory) {
+        this.mealsByCategory = mealsByCategory;
+        this.ingredients = new int[CATEGORIES][][];
+        Map<Integer, Integer> denseIndexById = new HashMap<>();
+        int nextIndex = 0;
+        for (int category = 0; category < CATEGORIES; category++) {
+            List<Meal> meals = mealsByCategory.get(category);
+            ingredients[category] = new int[meals.size()][];
+            for (int candidate = 0; candidate < meals.size(); candidate++) {
+                Meal meal = meals.get(candidate);
+                String[] names = meal.getMealIngredients();
+                int[] ids = meal.getIngredientIds();
+                int[] dense = new int[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    // dictionary ids where known, meals that were never stored fall back to the name; an id
+                    // whose name was already seen without one takes over that name's index
+                    Integer index = ids != null ? denseIndexById.get(ids[i]) : null;
+                    if (index == null) {
+                        index = denseIndexByName.get(names[i]);
+                    }
+                    if (index == null) {
+                        index = nextIndex++;
+                        denseIndexByName.put(names[i], index);
+                    }
+                    if (ids != null) {
+                        denseIndexById.putIfAbsent(ids[i], index);
+                    }
+                    dense[i] = index;
+                }
+                ingredients[category][candidate] = Arrays.stream(dense).distinct().toArray();
+            }
+        }
+        this.ingredientCount = nextIndex;
+    }
+
+    /**
+     * Solver over the current catalog, every category as cached by the catalog.
+     */
+    public static PlanSolver create(MealCatalog catalog) {
+        List<List<Meal>> mealsByCategory = new ArrayList<>(CATEGORIES);
+        for (MealCategory mealCategory : MealCategory.values()) {
+            mealsByCategory.add(catalog.getMealsByCategory(mealCategory));
+        }
+        return new PlanSolver(mealsByCategory);
+    }
+
+    /**
+     * @return the plan, or null if no week satisfies the constraints
+     */
+    public PlanSolution solve(PlanConstraints constraints) {
+        return new Search(constraints).run();
+    }
+
+    private class Search {
+        private final int noRepeatDays;
+        private final int[][] allowed = new int[CATEGORIES][]; // candidates per category, in tie-break order
+        private final int[] required;
+        private final int[][] slots = new int[DAYS][CATEGORIES]; // candidate per slot, -1 while not planned
+        private final int[] counts = new int[ingredientCount]; // planned meals per ingredient
+        private int distinct;
+        private boolean feasible = true;
+
+        private Search(PlanConstraints constraints) {
+            noRepeatDays = constraints.getNoRepeatDays();
+            for (int[] day : slots) {
+                Arrays.fill(day, -1);
+            }
+            boolean[] excluded = new boolean[counts.length];
+            for (String name : constraints.getExcludedIngredients()) {
+                Integer index = denseIndexByName.get(name);
+                if (index != null) {
+                    excluded[index] = true;
+                }
+            }
+            required = new int[constraints.getRequiredIngredients().size()];
+            int r = 0;
+            for (String name : constraints.getRequiredIngredients()) {
+                Integer index = denseIndexByName.get(name);
+                if (index == null) {
+                    feasible = false; // no meal in the catalog uses it
+                    break;
+                }
+                required[r++] = index;
+            }
+
+            SplittableRandom random = new SplittableRandom(constraints.getSeed());
+            for (int category = 0; category < CATEGORIES; category++) {
+                int[] candidates = new int[ingredients[category].length];
+                int size = 0;
+                for (int candidate = 0; candidate < candidates.length; candidate++) {
+                    if (!containsAny(ingredients[category][candidate], excluded)) {
+                        candidates[size++] = candidate;
+                    }
+                }
+                for (int i = size - 1; i > 0; i--) { // Fisher-Yates, ties go to whatever comes first
+                    int j = random.nextInt(i + 1);
+                    int swap = candidates[i];
+                    candidates[i] = candidates[j];
+                    candidates[j] = swap;
+                }
+                allowed[category] = Arrays.copyOf(candidates, size);
+            }
+        }
+
+        private PlanSolution run() {
+            if (!feasible || !construct()) {
+                return null;
+            }
+            for (int requiredIndex : required) {
+                if (counts[requiredIndex] == 0) {
+                    return null; // even the greedy pass, which prefers them, found no allowed meal with it
+                }
+            }
+            improve();
+            return toSolution();
+        }
+
+        private boolean construct() {
+            for (int day = 0; day < DAYS; day++) {
+                for (int category = 0; category < CATEGORIES; category++) {
+                    int best = -1;
+                    int bestCovered = -1;
+                    int bestAdded = Integer.MAX_VALUE;
+                    for (int candidate : allowed[category]) {
+                        if (repeatsTooSoon(day, category, candidate)) {
+                            continue;
+                        }
+                        int[] mealIngredients = ingredients[category][candidate];
+                        int covered = uncoveredRequired(mealIngredients);
+                        int added = added(mealIngredients);
+                        if (covered > bestCovered || (covered == bestCovered && added < bestAdded)) {
+                            best = candidate;
+                            bestCovered = covered;
+                            bestAdded = added;
+                        }
+                    }
+                    if (best < 0) {
+                        return false; // too few meals for the no-repeat window
+                    }
+                    place(day, category, best);
+                }
+            }
+            return true;
+        }
+
+        private void improve() {
+            boolean improved = true;
+            for (int pass = 0; improved && pass < MAX_IMPROVEMENT_PASSES; pass++) {
+                improved = false;
+                for (int day = 0; day < DAYS; day++) {
+                    for (int category = 0; category < CATEGORIES; category++) {
+                        int current = slots[day][category];
+                        unplace(day, category);
+                        int[] stillMissing = missingRequired();
+
+                        int best = current;
+                        int bestDistinct = distinct + added(ingredients[category][current]);
+                        for (int candidate : allowed[category]) {
+                            if (candidate == current || repeatsTooSoon(day, category, candidate)
+                                    || !containsAll(ingredients[category][candidate], stillMissing)) {
+                                continue;
+                            }
+                            int candidateDistinct = distinct + added(ingredients[category][candidate]);
+                            if (candidateDistinct < bestDistinct) {
+                                best = candidate;
+                                bestDistinct = candidateDistinct;
+                            }
+                        }
+                        place(day, category, best);
+                        improved |= best != current;
+                    }
+                }
+            }
+        }
+
+        private boolean repeatsTooSoon(int day, int category, int candidate) {
+            for (int other = Math.max(0, day - noRepeatDays + 1); other < Math.min(DAYS, day + noRepeatDays); other++) {
+                if (other != day && slots[other][category] == candidate) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void place(int day, int category, int candidate) {
+            slots[day][category] = candidate;
+            for (int ingredient : ingredients[category][candidate]) {
+                if (counts[ingredient]++ == 0) {
+                    distinct++;
+                }
+            }
+        }
+
+        private void unplace(int day, int category) {
+            for (int ingredient : ingredients[category][slots[day][category]]) {
+                if (--counts[ingredient] == 0) {
+                    distinct--;
+                }
+            }
+        }
+
+        private int added(int[] mealIngredients) {
+            int added = 0;
+            for (int ingredient : mealIngredients) {
+                if (counts[ingredient] == 0) {
+                    added++;
+                }
+            }
+            return added;
+        }
+
+        private int uncoveredRequired(int[] mealIngredients) {
+            int covered = 0;
+            for (int requiredIndex : required) {
+                if (counts[requiredIndex] == 0 && contains(mealIngredients, requiredIndex)) {
+                    covered++;
+                }
+            }
+            return covered;
+        }
+
+        private int[] missingRequired() {
+            return Arrays.stream(required).filter(requiredIndex -> counts[requiredIndex] == 0).toArray();
+        }
+
+        private PlanSolution toSolution() {
+            List<PlanLineItem> planLineItems = new ArrayList<>(DAYS * CATEGORIES);
+            for (Weekday weekday : Weekday.values()) {
+                for (MealCategory category : MealCategory.values()) {
+                    Meal meal = mealsByCategory.get(category.ordinal()).get(slots[weekday.ordinal()][category.ordinal()]);
+                    planLineItems.add(new PlanLineItem(weekday, category, meal.getMealName()));
+                }
+            }
+            return new PlanSolution(planLineItems, distinct);
+        }
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsAll(int[] values, int[] wanted) {
+        for (int w : wanted) {
+            if (!contains(values, w)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsAny(int[] values, boolean[] flags) {
+        for (int v : values) {
+            if (flags[v]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
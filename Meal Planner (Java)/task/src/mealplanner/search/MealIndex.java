@@ -0,0 +1,140 @@
+package mealplanner.search;
+
+import mealplanner.model.Meal;
+
+import java.util.*;
+
+/**
+ * In-memory inverted index over the meal catalog: for every ingredient and every word of a meal name, the sorted
+ * list of meals that have it.
+ * <p>
+ * Required ingredients are answered by intersecting their lists, shortest first, excluded ingredients by
+ * probing theirs; a name prefix takes the union of the lists of all words starting with it, found in a sorted
+ * word dictionary. No query reads a meal that can't be a result.
+ * <p>
+ * Meals and ingredients are numbered by the {@link SearchCatalog}, the ingredient lists are indexed by its
+ * ingredient ids.
+ */
+public class MealIndex {
+    private final SearchCatalog catalog;
+    private final List<Postings> ingredients = new ArrayList<>(); // by ingredient id
+    private final NavigableMap<String, Postings> nameWords = new TreeMap<>();
+
+    public MealIndex(SearchCatalog catalog) {
+        this.catalog = catalog;
+        catalog.addIndexer(this::add);
+    }
+
+    private void add(int number, Meal meal, int[] ingredientIds) {
+        for (int ingredient : ingredientIds) {
+            while (ingredients.size() <= ingredient) {
+                ingredients.add(new Postings());
+            }
+            ingredients.get(ingredient).add(number);
+        }
+        for (String word : meal.getMealName().split("\\s+")) {
+            if (!word.isEmpty()) {
+                nameWords.computeIfAbsent(SearchCatalog.normalize(word), key -> new Postings()).add(number);
+            }
+        }
+    }
+
+    /**
+     * @return the meals matching the query, in the order they were added to the catalog
+     */
+    public List<SearchHit> search(MealQuery query) {
+        return catalog.read(() -> {
+            int[] matches = match(query);
+            List<SearchHit> hits = new ArrayList<>(matches.length);
+            for (int number : matches) {
+                Meal meal = catalog.meal(number);
+                hits.add(new SearchHit(meal.getMealCategory(), meal.getMealName()));
+            }
+            return hits;
+        });
+    }
+
+    private int[] match(MealQuery query) {
+        List<Postings> required = new ArrayList<>();
+        for (String ingredient : query.requiredIngredients()) {
+            int id = catalog.ingredientId(ingredient);
+            if (id < 0) {
+                return new int[0]; // no meal has it
+            }
+            required.add(ingredients.get(id));
+        }
+        List<Postings> excluded = new ArrayList<>();
+        for (String ingredient : query.excludedIngredients()) {
+            int id = catalog.ingredientId(ingredient);
+            if (id >= 0) {
+                excluded.add(ingredients.get(id));
+            }
+        }
+        String prefix = SearchCatalog.normalize(query.namePrefix());
+        if (!prefix.isEmpty()) {
+            required.add(unionOfWords(prefix));
+        }
+
+        int[] candidates = required.isEmpty() ? allMeals() : intersect(required);
+        int size = 0;
+        for (int meal : candidates) {
+            if (excluded.stream().noneMatch(postings -> postings.contains(meal))) {
+                candidates[size++] = meal;
+            }
+        }
+        return Arrays.copyOf(candidates, size);
+    }
+
+    private Postings unionOfWords(String prefix) {
+        SortedMap<String, Postings> words = nameWords.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (words.size() == 1) {
+            return words.values().iterator().next();
+        }
+        BitSet union = new BitSet(catalog.mealCount());
+        for (Postings postings : words.values()) {
+            for (int i = 0; i < postings.size(); i++) {
+                union.set(postings.get(i));
+            }
+        }
+        Postings merged = new Postings();
+        union.stream().forEach(merged::add);
+        return merged;
+    }
+
+    private int[] allMeals() {
+        int[] meals = new int[catalog.mealCount()];
+        Arrays.setAll(meals, meal -> meal);
+        return meals;
+    }
+
+    static int[] intersect(List<Postings> lists) {
+        lists.sort(Comparator.comparingInt(Postings::size));
+        Postings shortest = lists.get(0);
+        int[] result = new int[shortest.size()];
+        int[] cursors = new int[lists.size()];
+        int size = 0;
+        candidates:
+        for (int i = 0; i < shortest.size(); i++) {
+            int meal = shortest.get(i);
+            for (int list = 1; list < lists.size(); list++) {
+                Postings postings = lists.get(list);
+                cursors[list] = postings.seek(meal, cursors[list]);
+                if (cursors[list] == postings.size()) {
+                    break candidates; // this list is exhausted, no later meal can be in all of them
+                }
+                if (postings.get(cursors[list]) != meal) {
+                    continue candidates;
+                }
+            }
+            result[size++] = meal;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @return the number of meals indexed so far
+     */
+    public int size() {
+        return catalog.size();
+    }
+}
@@ -0,0 +1,13 @@
+package mealplanner.search;
+
+import java.util.Set;
+
+/**
+ * What {@link MealIndex#search} looks for; every part is optional and matched case-insensitively.
+ *
+ * @param requiredIngredients the meal has to contain all of them
+ * @param excludedIngredients the meal may contain none of them
+ * @param namePrefix          a word of the meal's name starts with it, empty for any name
+ */
+public record MealQuery(Set<String> requiredIngredients, Set<String> excludedIngredients, String namePrefix) {
+}
@@ -0,0 +1,14 @@
+package mealplanner.search;
+
+import mealplanner.model.MealCategory;
+
+import java.util.List;
+
+/**
+ * @param missingIngredients the ingredients of the meal that aren't in the pantry, in recipe order
+ */
+public record PantryMatch(MealCategory category, String mealName, List<String> missingIngredients) {
+    public int missing() {
+        return missingIngredients.size();
+    }
+}
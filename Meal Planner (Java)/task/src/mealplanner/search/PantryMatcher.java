@@ -0,0 +1,162 @@
+package mealplanner.search;
+
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+
+import java.util.*;
+
+/**
+ * Ranks the catalog by what can be cooked from a pantry: meals with every ingredient at hand first, then the
+ * meals lacking one ingredient, and so on.
+ * <p>
+ * Every meal is stored as the bitset of its ingredient ids from the {@link SearchCatalog}, kept sparse: only the
+ * non-zero 64-bit words with their word index. The number of ingredients a meal lacks is then
+ * {@code bitCount(meal & ~pantry)} over a few words, with no lookup and no allocation per meal. The categories
+ * are scored in parallel.
+ */
+public class PantryMatcher {
+    private final SearchCatalog catalog;
+    private final CategoryMeals[] categories = new CategoryMeals[MealCategory.values().length];
+    private int maxIngredients; // distinct, of any meal: no meal can lack more
+
+    public PantryMatcher(SearchCatalog catalog) {
+        this.catalog = catalog;
+        for (MealCategory category : MealCategory.values()) {
+            categories[category.ordinal()] = new CategoryMeals(category);
+        }
+        catalog.addIndexer(this::add);
+    }
+
+    private void add(int number, Meal meal, int[] ingredientIds) {
+        BitSet ingredients = new BitSet();
+        for (int ingredient : ingredientIds) {
+            ingredients.set(ingredient);
+        }
+        categories[meal.getMealCategory().ordinal()].add(number, ingredients.toLongArray());
+        maxIngredients = Math.max(maxIngredients, ingredients.cardinality());
+    }
+
+    /**
+     * @param maxMissing the most ingredients a meal may lack to be listed
+     * @return the meals lacking at most {@code maxMissing} of the pantry's ingredients, fewest missing first,
+     * then by category and in the order they were added to the catalog
+     */
+    public List<PantryMatch> match(Collection<String> pantry, int maxMissing) {
+        return catalog.read(() -> {
+            // one bucket per possible number of missing ingredients, not per requested one
+            int mostMissing = Math.min(maxMissing, maxIngredients);
+            BitSet pantryIds = new BitSet();
+            for (String ingredient : pantry) {
+                int id = catalog.ingredientId(ingredient);
+                if (id >= 0) { // otherwise no meal needs it
+                    pantryIds.set(id);
+                }
+            }
+            long[] pantryWords = pantryIds.toLongArray();
+            List<int[][]> ranked = Arrays.stream(categories)
+                    .parallel()
+                    .map(meals -> meals.rank(pantryWords, mostMissing))
+                    .toList();
+
+            List<PantryMatch> matches = new ArrayList<>();
+            for (int missing = 0; missing <= mostMissing; missing++) {
+                for (int category = 0; category < categories.length; category++) {
+                    for (int meal : ranked.get(category)[missing]) {
+                        matches.add(categories[category].toMatch(meal, pantryIds));
+                    }
+                }
+            }
+            return matches;
+        });
+    }
+
+    /**
+     * The meals of one category, by catalog number, with their sparse ingredient bitsets: the non-zero words of
+     * the category's meal {@code m} are {@code words[starts[m]]} to {@code words[starts[m + 1] - 1]}, at word
+     * indexes {@code wordIndexes[...]}.
+     */
+    private class CategoryMeals {
+        private final MealCategory category;
+        private int[] numbers = new int[16];
+        private int size;
+        private int[] starts = {0};
+        private int[] wordIndexes = new int[16];
+        private long[] words = new long[16];
+
+        private CategoryMeals(MealCategory category) {
+            this.category = category;
+        }
+
+        private void add(int number, long[] ingredients) {
+            int start = starts[size];
+            int end = start;
+            for (long word : ingredients) {
+                end += word != 0 ? 1 : 0;
+            }
+            if (end > words.length) {
+                int capacity = Math.max(end, words.length * 2);
+                words = Arrays.copyOf(words, capacity);
+                wordIndexes = Arrays.copyOf(wordIndexes, capacity);
+            }
+            int position = start;
+            for (int wordIndex = 0; wordIndex < ingredients.length; wordIndex++) {
+                if (ingredients[wordIndex] != 0) {
+                    wordIndexes[position] = wordIndex;
+                    words[position++] = ingredients[wordIndex];
+                }
+            }
+            if (size + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            if (size == numbers.length) {
+                numbers = Arrays.copyOf(numbers, size * 2);
+            }
+            numbers[size++] = number;
+            starts[size] = end;
+        }
+
+        /**
+         * @return per number of missing ingredients up to {@code maxMissing}, the meals lacking that many
+         */
+        private int[][] rank(long[] pantry, int maxMissing) {
+            int[][] buckets = new int[maxMissing + 1][];
+            int[] sizes = new int[maxMissing + 1];
+            for (int missing = 0; missing <= maxMissing; missing++) {
+                buckets[missing] = new int[8];
+            }
+            for (int meal = 0; meal < size; meal++) {
+                int missing = 0;
+                for (int word = starts[meal]; word < starts[meal + 1] && missing <= maxMissing; word++) {
+                    int wordIndex = wordIndexes[word];
+                    long available = wordIndex < pantry.length ? pantry[wordIndex] : 0;
+                    missing += Long.bitCount(words[word] & ~available);
+                }
+                if (missing <= maxMissing) {
+                    if (sizes[missing] == buckets[missing].length) {
+                        buckets[missing] = Arrays.copyOf(buckets[missing], sizes[missing] * 2);
+                    }
+                    buckets[missing][sizes[missing]++] = meal;
+                }
+            }
+            for (int missing = 0; missing <= maxMissing; missing++) {
+                buckets[missing] = Arrays.copyOf(buckets[missing], sizes[missing]);
+            }
+            return buckets;
+        }
+
+        private PantryMatch toMatch(int meal, BitSet pantry) {
+            Meal catalogMeal = catalog.meal(numbers[meal]);
+            int[] ids = catalog.ingredients(numbers[meal]);
+            String[] names = catalogMeal.getMealIngredients();
+            List<String> missing = new ArrayList<>();
+            BitSet seen = new BitSet();
+            for (int i = 0; i < ids.length; i++) {
+                if (!pantry.get(ids[i]) && !seen.get(ids[i])) {
+                    seen.set(ids[i]);
+                    missing.add(names[i]);
+                }
+            }
+            return new PantryMatch(category, catalogMeal.getMealName(), missing);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package mealplanner.search;
+
+import java.util.Arrays;
+
+/**
+ * Ascending meal numbers of one index term. Meals are numbered in the order they are indexed, so adding
+ * a meal appends to the end and the list stays sorted without any work.
+ */
+class Postings {
+    private int[] meals = new int[4];
+    private int size;
+
+    void add(int meal) {
+        if (size > 0 && meals[size - 1] == meal) {
+            return; // the same ingredient twice in one meal
+        }
+        if (size == meals.length) {
+            meals = Arrays.copyOf(meals, size * 2);
+        }
+        meals[size++] = meal;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int index) {
+        return meals[index];
+    }
+
+    /**
+     * Galloping search from {@code from}: cheap when the lists differ a lot in length, which is the common case
+     * for a rare and a frequent ingredient.
+     *
+     * @return the index of the first number not smaller than {@code meal}, at least {@code from}
+     */
+    int seek(int meal, int from) {
+        if (from >= size) {
+            return size;
+        }
+        int bound = 1;
+        while (from + bound < size && meals[from + bound] < meal) {
+            bound <<= 1;
+        }
+        int index = Arrays.binarySearch(meals, from + (bound >> 1), Math.min(size, from + bound + 1), meal);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    boolean contains(int meal) {
+        return Arrays.binarySearch(meals, 0, size, meal) >= 0;
+    }
+}
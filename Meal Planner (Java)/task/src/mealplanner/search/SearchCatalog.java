@@ -0,0 +1,158 @@
+package mealplanner.search;
+
+import mealplanner.controller.MealRepository;
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * The meal catalog as the search structures see it: every meal with a dense number, in the order it was added,
+ * and every distinct ingredient, compared case-insensitively, with a dense id. {@link MealIndex} and
+ * {@link PantryMatcher} both build on these numbers, so the catalog is held and numbered once however many of them
+ * there are.
+ * <p>
+ * The catalog is loaded on the first query. Meals persisted through the repository afterwards are handed to the
+ * indexers as they are committed, so nothing needs a rebuild. Indexers are called under the write lock, queries
+ * run under the read lock.
+ */
+public class SearchCatalog {
+    private final MealRepository repository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Indexer> indexers = new ArrayList<>();
+    private final List<Meal> meals = new ArrayList<>(); // by number
+    private final List<int[]> mealIngredients = new ArrayList<>(); // ingredient ids by meal number
+    private final Set<String> mealNames = new HashSet<>();
+    private final Map<String, Integer> ingredientIds = new HashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * Receives every meal of the catalog once, in number order.
+     */
+    @FunctionalInterface
+    interface Indexer {
+        /**
+         * @param number      the meal's number
+         * @param ingredients the ingredient ids of the meal, in the order of its ingredients
+         */
+        void add(int number, Meal meal, int[] ingredients);
+    }
+
+    public SearchCatalog(MealRepository repository) {
+        this.repository = repository;
+        repository.addMealListener(this::addAll);
+    }
+
+    /**
+     * Registers the indexer and hands it the meals added so far.
+     */
+    void addIndexer(Indexer indexer) {
+        lock.writeLock().lock();
+        try {
+            indexers.add(indexer);
+            for (int meal = 0; meal < meals.size(); meal++) {
+                indexer.add(meal, meals.get(meal), mealIngredients.get(meal));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addAll(List<Meal> committed) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) { // before the first query, the load picks them up
+                committed.forEach(this::add);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Meal meal) {
+        if (!mealNames.add(meal.getMealName())) {
+            return; // committed while the catalog was loading, the load already had it
+        }
+        String[] names = meal.getMealIngredients();
+        int[] ingredients = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ingredients[i] = ingredientIds.computeIfAbsent(normalize(names[i]), name -> ingredientIds.size());
+        }
+        int number = meals.size();
+        meals.add(meal);
+        mealIngredients.add(ingredients);
+        for (Indexer indexer : indexers) {
+            indexer.add(number, meal, ingredients);
+        }
+    }
+
+    static String normalize(String term) {
+        return term.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                for (MealCategory category : MealCategory.values()) {
+                    repository.getMealsByCategory(category, false).forEach(this::add);
+                }
+                loaded = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the catalog if needed and runs the query under the read lock.
+     */
+    <T> T read(Supplier<T> query) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the accessors below are meant for queries run by read
+
+    Meal meal(int meal) {
+        return meals.get(meal);
+    }
+
+    int[] ingredients(int meal) {
+        return mealIngredients.get(meal);
+    }
+
+    /**
+     * @return the id of the ingredient, or -1 if no meal has it
+     */
+    int ingredientId(String ingredient) {
+        return ingredientIds.getOrDefault(normalize(ingredient), -1);
+    }
+
+    int mealCount() {
+        return meals.size();
+    }
+
+    /**
+     * @return the number of meals loaded so far
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return meals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package mealplanner.search;
+
+import mealplanner.model.MealCategory;
+
+public record SearchHit(MealCategory category, String mealName) {
+}
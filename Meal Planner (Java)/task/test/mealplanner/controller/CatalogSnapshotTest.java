@@ -0,0 +1,160 @@
+package mealplanner.controller;
+
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.model.MealVisitor;
+import mealplanner.model.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class CatalogSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsEveryMealWithItsIngredients() throws IOException {
+        FixedRepository repository = new FixedRepository();
+        repository.add(new Meal(MealCategory.LUNCH, "tomato salad", new String[]{"tomato", "olive oil"},
+                new int[]{3, 4}, new double[]{200, 15}, new Unit[]{Unit.GRAM, Unit.MILLILITER}));
+        repository.add(new Meal(MealCategory.LUNCH, "Bánh mì", "bread, 2 eggs"));
+        repository.add(new Meal(MealCategory.DINNER, "ramen", "noodles"));
+        Path file = folder.getRoot().toPath().resolve("catalog.snapshot");
+
+        assertEquals(3, CatalogSnapshot.write(repository, file));
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+
+        Meal salad = snapshot.findMeal(MealCategory.LUNCH, "tomato salad");
+        assertArrayEquals(new String[]{"tomato", "olive oil"}, salad.getMealIngredients());
+        assertArrayEquals(new int[]{3, 4}, salad.getIngredientIds());
+        assertArrayEquals(new double[]{200, 15}, salad.getAmounts(), 0);
+        assertArrayEquals(new Unit[]{Unit.GRAM, Unit.MILLILITER}, salad.getUnits());
+        Meal banhMi = snapshot.findMeal(MealCategory.LUNCH, "Bánh mì");
+        assertNull(banhMi.getIngredientIds()); // written without dictionary ids
+        assertArrayEquals(new String[]{"bread", "eggs"}, banhMi.getMealIngredients());
+        assertArrayEquals(new double[]{1, 2}, banhMi.getAmounts(), 0);
+        assertEquals(MealCategory.DINNER, snapshot.findMeal(MealCategory.DINNER, "ramen").getMealCategory());
+    }
+
+    @Test
+    public void returnsNullForMissingMeals() throws IOException {
+        FixedRepository repository = new FixedRepository();
+        for (int i = 0; i < 100; i++) {
+            repository.add(new Meal(MealCategory.BREAKFAST, "meal " + i, "oats"));
+        }
+        Path file = folder.getRoot().toPath().resolve("catalog.snapshot");
+        CatalogSnapshot.write(repository, file);
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(snapshot.findMeal(MealCategory.BREAKFAST, "meal " + i));
+        }
+        assertNull(snapshot.findMeal(MealCategory.BREAKFAST, "meal 100"));
+        assertNull(snapshot.findMeal(MealCategory.BREAKFAST, ""));
+        assertNull(snapshot.findMeal(MealCategory.LUNCH, "meal 1"));
+        assertEquals(0, snapshot.size(MealCategory.LUNCH));
+    }
+
+    @Test
+    public void listsNamesInTheStoragesOrder() throws IOException {
+        FixedRepository repository = new FixedRepository();
+        for (String name : List.of("banana bread", "Apple pie", "éclair", "cheesecake")) {
+            repository.add(new Meal(MealCategory.DINNER, name, "sugar"));
+        }
+        Path file = folder.getRoot().toPath().resolve("catalog.snapshot");
+        CatalogSnapshot.write(repository, file);
+
+        CatalogSnapshot snapshot = CatalogSnapshot.open(file);
+
+        List<String> expected = repository.getMealsByCategory(MealCategory.DINNER, true).stream()
+                .map(Meal::getMealName)
+                .toList();
+        assertEquals(expected, snapshot.getMealNames(MealCategory.DINNER));
+        assertEquals("Apple pie", snapshot.mealName(MealCategory.DINNER, 0));
+    }
+
+    @Test
+    public void rewritingReplacesTheSnapshotWithoutLeavingTemporaryFiles() throws IOException {
+        FixedRepository repository = new FixedRepository();
+        repository.add(new Meal(MealCategory.LUNCH, "soup", "water"));
+        Path file = folder.getRoot().toPath().resolve("catalog.snapshot");
+        CatalogSnapshot.write(repository, file);
+        repository.add(new Meal(MealCategory.LUNCH, "stew", "water, beans"));
+
+        CatalogSnapshot.write(repository, file);
+
+        assertEquals(2, CatalogSnapshot.open(file).size(MealCategory.LUNCH));
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    public void removesTheTemporaryFileWhenTheMoveFails() throws IOException {
+        FixedRepository repository = new FixedRepository();
+        repository.add(new Meal(MealCategory.LUNCH, "soup", "water"));
+        Path directory = folder.newFolder("catalog.snapshot").toPath(); // a non-empty directory can't be replaced
+        Files.write(directory.resolve("keep"), new byte[1]);
+
+        assertThrows(IOException.class, () -> CatalogSnapshot.write(repository, directory));
+
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(List.of(directory), files.toList());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("meals.db");
+        Files.write(file, new byte[100]);
+
+        assertThrows(IOException.class, () -> CatalogSnapshot.open(file));
+    }
+
+    /**
+     * Meals in insertion order, sorted case-insensitively like a database collation would.
+     */
+    private static class FixedRepository implements MealRepository {
+        private final List<Meal> meals = new ArrayList<>();
+
+        private void add(Meal meal) {
+            meals.add(meal);
+        }
+
+        @Override
+        public void addMealListener(Consumer<List<Meal>> listener) {
+        }
+
+        @Override
+        public List<String> persistMeals(List<Meal> newMeals) {
+            meals.addAll(newMeals);
+            return List.of();
+        }
+
+        @Override
+        public List<Meal> getMealsByCategory(MealCategory category, boolean sort) {
+            List<Meal> result = new ArrayList<>(meals.stream().filter(meal -> meal.getMealCategory() == category)
+                    .toList());
+            if (sort) {
+                result.sort(Comparator.comparing(Meal::getMealName, String.CASE_INSENSITIVE_ORDER));
+            }
+            return result;
+        }
+
+        @Override
+        public void streamMealsByCategory(MealCategory category, MealVisitor visitor) throws IOException {
+            for (Meal meal : getMealsByCategory(category, false)) {
+                visitor.visit(meal);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package mealplanner.controller;
+
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.model.PlanKey;
+import mealplanner.model.PlanLineItem;
+import mealplanner.model.Unit;
+import mealplanner.model.Weekday;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class EmbeddedStoreTest {
+    private static final PlanKey WEEK = new PlanKey(PlanKey.DEFAULT_HOUSEHOLD, LocalDate.of(2024, 1, 1));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private EmbeddedStore store;
+
+    @Before
+    public void setUp() {
+        file = folder.getRoot().toPath().resolve("meals.db");
+        store = open();
+    }
+
+    @After
+    public void tearDown() {
+        store.closeConnections();
+    }
+
+    @Test
+    public void replaysMealsAndPlansOnOpen() {
+        assertTrue(store.persistMeal(new Meal(MealCategory.LUNCH, "tomato soup", "4 tomatoes, 500 ml water, salt")));
+        assertTrue(store.persistMeal(new Meal(MealCategory.DINNER, "ramen", "noodles, salt")));
+        store.persistPlan(WEEK, List.of(new PlanLineItem(Weekday.MONDAY, MealCategory.LUNCH, "tomato soup")));
+
+        reopen();
+
+        Meal soup = store.getMealsByCategory(MealCategory.LUNCH, false).get(0);
+        assertEquals("tomato soup", soup.getMealName());
+        assertArrayEquals(new String[]{"tomatoes", "water", "salt"}, soup.getMealIngredients());
+        assertArrayEquals(new double[]{4, 500, 1}, soup.getAmounts(), 0);
+        assertEquals(Unit.MILLILITER, soup.getUnits()[1]);
+        Meal ramen = store.getMealsByCategory(MealCategory.DINNER, false).get(0);
+        assertEquals(soup.getIngredientIds()[2], ramen.getIngredientIds()[1]); // salt is stored once
+        List<PlanLineItem> plan = store.getMealPlan(WEEK);
+        assertEquals(1, plan.size());
+        assertEquals("tomato soup", plan.get(0).getMealName());
+        assertEquals(WEEK, store.getLatestPlan(PlanKey.DEFAULT_HOUSEHOLD));
+    }
+
+    @Test
+    public void cutsOffAChangeThatWasNeverCommitted() throws IOException {
+        store.persistMeal(new Meal(MealCategory.BREAKFAST, "porridge", "oats, milk"));
+        long committed = Files.size(file);
+        store.persistMeal(new Meal(MealCategory.BREAKFAST, "pancakes", "flour, eggs, milk"));
+        store.closeConnections();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3); // the crash hit the commit record
+        }
+
+        store = open();
+
+        assertEquals(List.of("porridge"), names(MealCategory.BREAKFAST));
+        assertEquals(committed, Files.size(file));
+        assertTrue(store.persistMeal(new Meal(MealCategory.BREAKFAST, "pancakes", "flour, eggs, milk")));
+        reopen();
+        assertEquals(List.of("porridge", "pancakes"), names(MealCategory.BREAKFAST));
+    }
+
+    @Test
+    public void cutsOffGarbageAfterTheLastCommit() throws IOException {
+        store.persistMeal(new Meal(MealCategory.LUNCH, "salad", "lettuce"));
+        store.closeConnections();
+        long committed = Files.size(file);
+        Files.write(file, new byte[]{0, 0, 0, 42, 2, 7}, StandardOpenOption.APPEND);
+
+        store = open();
+
+        assertEquals(List.of("salad"), names(MealCategory.LUNCH));
+        assertEquals(committed, Files.size(file));
+    }
+
+    @Test
+    public void skipsOnlyTakenOrRepeatedNames() {
+        assertTrue(store.persistMeal(new Meal(MealCategory.LUNCH, "salad", "lettuce")));
+
+        assertFalse(store.persistMeal(new Meal(MealCategory.DINNER, "salad", "lettuce")));
+        assertEquals(List.of("salad", "stew"), store.persistMeals(List.of(
+                new Meal(MealCategory.DINNER, "salad", "lettuce"),
+                new Meal(MealCategory.DINNER, "stew", "beans"),
+                new Meal(MealCategory.DINNER, "curry", "rice"),
+                new Meal(MealCategory.DINNER, "stew", "lentils"))));
+
+        reopen();
+        assertEquals(List.of("salad"), names(MealCategory.LUNCH));
+        assertEquals(List.of("stew", "curry"), names(MealCategory.DINNER));
+    }
+
+    @Test
+    public void refusesAFileInUseByAnotherStore() {
+        EmbeddedStore second = new EmbeddedStore(file, settings());
+
+        assertThrows(StorageException.class, second::initDbStructures);
+    }
+
+    private List<String> names(MealCategory category) {
+        return store.getMealsByCategory(category, false).stream().map(Meal::getMealName).toList();
+    }
+
+    private void reopen() {
+        store.closeConnections();
+        store = open();
+    }
+
+    private EmbeddedStore open() {
+        EmbeddedStore opened = new EmbeddedStore(file, settings());
+        opened.initDbStructures();
+        return opened;
+    }
+
+    private static Properties settings() {
+        Properties settings = new Properties();
+        settings.setProperty("storage.sync", "false");
+        return settings;
+    }
+}
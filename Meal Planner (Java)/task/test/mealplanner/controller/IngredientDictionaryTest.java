@@ -0,0 +1,101 @@
+package mealplanner.controller;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IngredientDictionaryTest {
+    @Test
+    public void countsOneHitOrMissPerLookup() {
+        IngredientDictionary dictionary = new IngredientDictionary(10);
+        dictionary.put(1, "salt");
+
+        assertEquals(Integer.valueOf(1), dictionary.idOf("salt"));
+        assertNull(dictionary.idOf("pepper"));
+
+        assertEquals(1, dictionary.getHits());
+        assertEquals(1, dictionary.getMisses());
+    }
+
+    @Test
+    public void internsNamesById() {
+        IngredientDictionary dictionary = new IngredientDictionary(10);
+        String first = dictionary.put(1, "salt");
+
+        assertSame(first, dictionary.put(1, new String("salt")));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public void looksNamesUpById() {
+        IngredientDictionary dictionary = new IngredientDictionary(10);
+        String salt = dictionary.put(1, "salt");
+
+        assertSame(salt, dictionary.nameOf(1));
+        assertNull(dictionary.nameOf(2));
+        assertEquals(0, dictionary.getHits() + dictionary.getMisses());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedName() {
+        IngredientDictionary dictionary = new IngredientDictionary(2);
+        dictionary.put(1, "salt");
+        dictionary.put(2, "pepper");
+        dictionary.idOf("salt");
+
+        dictionary.put(3, "oil");
+
+        assertEquals(2, dictionary.size());
+        assertNull(dictionary.idOf("pepper"));
+        assertEquals(Integer.valueOf(1), dictionary.idOf("salt"));
+        assertEquals(Integer.valueOf(3), dictionary.idOf("oil"));
+    }
+
+    @Test
+    public void forgetsTheOrderOfInvalidatedNames() {
+        IngredientDictionary dictionary = new IngredientDictionary(2);
+        dictionary.put(1, "salt");
+        dictionary.invalidate(List.of("salt"));
+        dictionary.put(1, "salt");
+        dictionary.put(2, "pepper");
+
+        dictionary.put(3, "oil"); // one eviction, the name re-added first
+
+        assertEquals(2, dictionary.size());
+        assertNull(dictionary.idOf("salt"));
+        assertEquals(Integer.valueOf(2), dictionary.idOf("pepper"));
+        assertEquals(Integer.valueOf(3), dictionary.idOf("oil"));
+    }
+
+    @Test
+    public void evictsAnEighthAtOnceWhenFull() {
+        IngredientDictionary dictionary = new IngredientDictionary(16);
+        for (int id = 1; id <= 16; id++) {
+            dictionary.put(id, "ingredient " + id);
+        }
+        dictionary.nameOf(1);
+
+        dictionary.put(17, "ingredient 17");
+
+        assertEquals(14, dictionary.size());
+        assertEquals("ingredient 1", dictionary.nameOf(1));
+        assertNull(dictionary.nameOf(2));
+        assertNull(dictionary.nameOf(4));
+        assertEquals("ingredient 5", dictionary.nameOf(5));
+        assertEquals("ingredient 17", dictionary.nameOf(17));
+    }
+
+    @Test
+    public void replacesANameRecreatedUnderANewId() {
+        IngredientDictionary dictionary = new IngredientDictionary(10);
+        dictionary.putAll(Map.of("salt", 1));
+
+        dictionary.put(7, "salt");
+
+        assertEquals(Integer.valueOf(7), dictionary.idOf("salt"));
+        assertEquals(1, dictionary.size());
+    }
+}
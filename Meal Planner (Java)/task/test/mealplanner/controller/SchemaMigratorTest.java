@@ -0,0 +1,250 @@
+package mealplanner.controller;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class SchemaMigratorTest {
+    private static final List<String> SCRIPTS = List.of("V1__baseline.sql", "V2__id_sequences.sql",
+            "V3__keys_and_indexes.sql", "V4__normalize_plan.sql", "V5__ingredient_dictionary.sql",
+            "V6__household_plans.sql", "V7__shopping_list.sql", "V8__ingredient_amounts.sql",
+            "V9__meals_category_id_index.sql");
+    private static final int LATEST = SCRIPTS.size();
+
+    private final FakeDatabase database = new FakeDatabase();
+
+    @Test
+    public void migratesAnEmptyDatabaseToTheLatestVersion() throws SQLException {
+        assertEquals(LATEST, new SchemaMigrator().migrate(database.connection));
+
+        assertEquals(LATEST, database.versions.size());
+        for (int version = 1; version <= LATEST; version++) {
+            assertEquals(Long.valueOf(checksumOf(SCRIPTS.get(version - 1))), database.versions.get(version));
+        }
+        List<String> scripts = database.executed.subList(database.executed.size() - LATEST, database.executed.size());
+        assertEquals(SCRIPTS.stream().map(SchemaMigratorTest::script).toList(), scripts);
+        assertTrue(database.committed);
+        assertTrue(database.autoCommit);
+    }
+
+    @Test
+    public void checksACurrentSchemaWithOneQuery() throws SQLException {
+        new SchemaMigrator().migrate(database.connection);
+        database.executed.clear();
+
+        assertEquals(0, new SchemaMigrator().migrate(database.connection));
+
+        assertEquals(1, database.executed.size());
+        assertTrue(database.executed.get(0).startsWith("select v.version, v.checksum"));
+    }
+
+    @Test
+    public void appliesOnlyPendingScripts() throws SQLException {
+        database.applied(LATEST - 2);
+
+        assertEquals(2, new SchemaMigrator().migrate(database.connection));
+
+        assertEquals(LATEST, database.versions.size());
+        assertFalse(database.executed.contains(script(SCRIPTS.get(LATEST - 3))));
+        assertTrue(database.executed.contains(script(SCRIPTS.get(LATEST - 1))));
+    }
+
+    @Test
+    public void startsOverWhenTheTablesWereDropped() throws SQLException {
+        database.applied(LATEST);
+        database.tablesPresent = false;
+
+        assertEquals(LATEST, new SchemaMigrator().migrate(database.connection));
+
+        assertTrue(database.executed.contains("delete from schema_version"));
+        assertEquals(LATEST, database.versions.size());
+    }
+
+    @Test
+    public void rejectsAChangedScript() {
+        database.applied(LATEST);
+        database.versions.put(3, database.versions.get(3) + 1);
+
+        SQLException e = assertThrows(SQLException.class, () -> new SchemaMigrator().migrate(database.connection));
+
+        assertTrue(e.getMessage(), e.getMessage().contains("checksum mismatch"));
+        assertTrue(e.getMessage(), e.getMessage().contains(SCRIPTS.get(2)));
+    }
+
+    @Test
+    public void rejectsChangesThatCancelOutInTheSum() {
+        database.applied(LATEST);
+        database.versions.put(2, database.versions.get(2) + 7);
+        database.versions.put(5, database.versions.get(5) - 7);
+
+        SQLException e = assertThrows(SQLException.class, () -> new SchemaMigrator().migrate(database.connection));
+
+        assertTrue(e.getMessage(), e.getMessage().contains(SCRIPTS.get(1)));
+    }
+
+    @Test
+    public void rejectsASchemaNewerThanThePlanner() {
+        database.applied(LATEST);
+        database.versions.put(LATEST + 1, 0L);
+
+        SQLException e = assertThrows(SQLException.class, () -> new SchemaMigrator().migrate(database.connection));
+
+        assertTrue(e.getMessage(), e.getMessage().contains("newer than the latest version"));
+    }
+
+    @Test
+    public void rollsBackWhenAScriptFails() {
+        database.applied(3);
+        database.failingScript = script(SCRIPTS.get(4));
+
+        assertThrows(SQLException.class, () -> new SchemaMigrator().migrate(database.connection));
+
+        assertTrue(database.rolledBack);
+        assertFalse(database.committed);
+        assertEquals(Set.of(1, 2, 3), database.versions.keySet());
+        assertTrue(database.autoCommit);
+    }
+
+    private static long checksumOf(String script) {
+        CRC32 crc = new CRC32();
+        crc.update(script(script).getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static String script(String script) {
+        try (InputStream inputStream = SchemaMigrator.class.getResourceAsStream("/db/migration/" + script)) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Just the {@code schema_version} table behind a JDBC connection, with transactions, plus a flag for the
+     * application tables. Every other statement is recorded and otherwise ignored.
+     */
+    private static class FakeDatabase {
+        private final List<String> executed = new ArrayList<>();
+        private SortedMap<Integer, Long> versions; // null until the table is created
+        private SortedMap<Integer, Long> committedVersions;
+        private boolean tablesPresent;
+        private boolean autoCommit = true;
+        private boolean committed;
+        private boolean rolledBack;
+        private String failingScript;
+        private final Connection connection = proxy(Connection.class, (name, args) -> switch (name) {
+            case "getAutoCommit" -> autoCommit;
+            case "setAutoCommit" -> {
+                autoCommit = (Boolean) args[0];
+                committedVersions = versions == null ? null : new TreeMap<>(versions);
+                yield null;
+            }
+            case "commit" -> {
+                committed = true;
+                yield null;
+            }
+            case "rollback" -> {
+                rolledBack = true;
+                versions = committedVersions;
+                yield null;
+            }
+            case "createStatement" -> statement();
+            case "prepareStatement" -> recordStatement();
+            default -> throw new UnsupportedOperationException(name);
+        });
+
+        private void applied(int latest) {
+            versions = new TreeMap<>();
+            for (int version = 1; version <= latest; version++) {
+                versions.put(version, checksumOf(SCRIPTS.get(version - 1)));
+            }
+            tablesPresent = true;
+        }
+
+        private Statement statement() {
+            return proxy(Statement.class, (name, args) -> {
+                if (name.equals("close")) {
+                    return null;
+                }
+                String sql = (String) args[0];
+                executed.add(sql);
+                if (sql.equals(failingScript)) {
+                    throw new SQLException("syntax error");
+                }
+                if (sql.startsWith("select v.version")) {
+                    if (versions == null) {
+                        throw new SQLException("relation \"schema_version\" does not exist", "42P01");
+                    }
+                    return state();
+                }
+                if (sql.startsWith("create table if not exists schema_version")) {
+                    if (versions == null) {
+                        versions = new TreeMap<>();
+                    }
+                } else if (sql.startsWith("drop table")) {
+                    tablesPresent = false;
+                } else if (sql.equals("delete from schema_version")) {
+                    versions.clear();
+                } else if (sql.contains("create table")) { // a migration script
+                    tablesPresent = true;
+                }
+                return name.equals("execute") ? Boolean.FALSE : (Object) 0;
+            });
+        }
+
+        // one row per version, or a single row of nulls, like the left join of the real query
+        private ResultSet state() {
+            List<Map.Entry<Integer, Long>> rows = new ArrayList<>(versions.entrySet());
+            if (rows.isEmpty()) {
+                rows.add(null);
+            }
+            int[] row = {-1};
+            return proxy(ResultSet.class, (name, args) -> switch (name) {
+                case "next" -> ++row[0] < rows.size();
+                case "getInt" -> rows.get(row[0]) == null ? 0 : rows.get(row[0]).getKey();
+                case "wasNull" -> rows.get(row[0]) == null;
+                case "getLong" -> rows.get(row[0]).getValue();
+                case "getBoolean" -> tablesPresent;
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(name);
+            });
+        }
+
+        private PreparedStatement recordStatement() {
+            Object[] row = new Object[3];
+            return proxy(PreparedStatement.class, (name, args) -> switch (name) {
+                case "setInt", "setString", "setLong" -> {
+                    row[(Integer) args[0] - 1] = args[1];
+                    yield null;
+                }
+                case "executeUpdate" -> {
+                    versions.put((Integer) row[0], (Long) row[2]);
+                    yield 1;
+                }
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(name);
+            });
+        }
+
+        private interface Handler {
+            Object handle(String name, Object[] args) throws SQLException;
+        }
+
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                    (proxy, method, args) -> handler.handle(method.getName(), args)));
+        }
+    }
+}
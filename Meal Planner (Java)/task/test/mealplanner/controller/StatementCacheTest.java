@@ -0,0 +1,206 @@
+package mealplanner.controller;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StatementCacheTest {
+    private final List<FakeStatement> prepared = new ArrayList<>();
+    private final Connection physical = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                if (method.getName().equals("prepareStatement")) {
+                    FakeStatement statement = new FakeStatement((String) args[0]);
+                    prepared.add(statement);
+                    return statement.proxy;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    private final StatementCache.Stats stats = new StatementCache.Stats();
+
+    @Test
+    public void reusesAStatementHandedBack() throws SQLException {
+        StatementCache cache = new StatementCache(physical, 4, stats);
+
+        cache.prepare("select 1", physical).close();
+        cache.prepare("select 1", physical).close();
+
+        assertEquals(1, prepared.size());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getHits());
+        assertFalse(prepared.get(0).closed);
+        assertTrue(prepared.get(0).calls.contains("clearParameters"));
+    }
+
+    @Test
+    public void closesAResultSetLeftOpen() throws SQLException {
+        StatementCache cache = new StatementCache(physical, 4, stats);
+        PreparedStatement statement = cache.prepare("select 1", physical);
+        statement.executeQuery();
+
+        statement.close();
+
+        assertTrue(prepared.get(0).resultSetClosed);
+        assertFalse(prepared.get(0).closed);
+    }
+
+    @Test
+    public void preparesASeparateStatementForNestedUse() throws SQLException {
+        StatementCache cache = new StatementCache(physical, 4, stats);
+
+        try (PreparedStatement outer = cache.prepare("select 1", physical);
+             PreparedStatement inner = cache.prepare("select 1", physical)) {
+            assertNotSame(outer, inner);
+        }
+
+        assertEquals(2, prepared.size());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedStatement() throws SQLException {
+        StatementCache cache = new StatementCache(physical, 2, stats);
+        cache.prepare("a", physical).close();
+        cache.prepare("b", physical).close();
+        cache.prepare("a", physical).close(); // b is now the least recently used
+
+        cache.prepare("c", physical).close();
+
+        assertEquals(2, cache.size());
+        assertEquals(1, stats.getEvictions());
+        assertTrue(statement("b").closed);
+        assertFalse(statement("a").closed);
+        cache.prepare("a", physical).close();
+        assertEquals(3, prepared.size());
+    }
+
+    @Test
+    public void neverEvictsAStatementInUse() throws SQLException {
+        StatementCache cache = new StatementCache(physical, 1, stats);
+        PreparedStatement first = cache.prepare("a", physical);
+
+        try (PreparedStatement second = cache.prepare("b", physical)) {
+            assertFalse(second.isClosed());
+            assertFalse(statement("a").closed);
+            assertFalse(statement("b").closed);
+        }
+        assertFalse(statement("a").closed);
+        first.close();
+
+        assertEquals(1, cache.size());
+        assertEquals(1, prepared.stream().filter(statement -> statement.closed).count());
+    }
+
+    @Test
+    public void restoresSettingsChangedByTheBorrower() throws SQLException {
+        StatementCache cache = new StatementCache(physical, 4, stats);
+        try (PreparedStatement statement = cache.prepare("select 1", physical)) {
+            statement.setFetchSize(1000);
+            statement.setMaxRows(10);
+            statement.setQueryTimeout(5);
+        }
+
+        try (PreparedStatement statement = cache.prepare("select 1", physical)) {
+            assertEquals(0, statement.getFetchSize());
+            assertEquals(0, statement.getLargeMaxRows());
+            assertEquals(0, statement.getQueryTimeout());
+        }
+        assertEquals(1, prepared.size());
+    }
+
+    @Test
+    public void rejectsUseAfterClose() throws SQLException {
+        StatementCache cache = new StatementCache(physical, 4, stats);
+        PreparedStatement statement = cache.prepare("select 1", physical);
+        statement.close();
+
+        assertTrue(statement.isClosed());
+        assertThrows(SQLException.class, () -> statement.setInt(1, 1));
+    }
+
+    @Test
+    public void closesEveryStatementWithTheCache() throws SQLException {
+        StatementCache cache = new StatementCache(physical, 4, stats);
+        cache.prepare("a", physical).close();
+        cache.prepare("b", physical).close();
+
+        cache.closeAll();
+
+        assertTrue(prepared.stream().allMatch(statement -> statement.closed));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cachesNothingWithoutASize() throws SQLException {
+        StatementCache cache = new StatementCache(physical, 0, stats);
+
+        cache.prepare("a", physical).close();
+        cache.prepare("a", physical).close();
+
+        assertEquals(2, prepared.size());
+        assertTrue(prepared.stream().allMatch(statement -> statement.closed));
+    }
+
+    private FakeStatement statement(String sql) {
+        return prepared.stream().filter(statement -> statement.sql.equals(sql)).findFirst().orElseThrow();
+    }
+
+    /**
+     * Remembers the settings and calls a driver's statement would see.
+     */
+    private static class FakeStatement {
+        private final String sql;
+        private final List<String> calls = new ArrayList<>();
+        private final Map<String, Number> settings = new HashMap<>();
+        private final PreparedStatement proxy;
+        private boolean closed;
+        private ResultSet resultSet;
+        private boolean resultSetClosed;
+
+        private FakeStatement(String sql) {
+            this.sql = sql;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+                        String name = method.getName();
+                        calls.add(name);
+                        if (name.equals("close")) {
+                            closed = true;
+                        } else if (name.equals("isClosed")) {
+                            return closed;
+                        } else if (name.equals("executeQuery")) {
+                            resultSet = resultSet();
+                            return resultSet;
+                        } else if (name.equals("getResultSet")) {
+                            return resultSet;
+                        } else if (name.startsWith("set") && args.length == 1 && args[0] instanceof Number) {
+                            settings.put(name.substring(3).replace("Large", ""), (Number) args[0]);
+                        } else if (name.startsWith("get") && method.getReturnType() == int.class) {
+                            return settings.getOrDefault(name.substring(3), 0).intValue();
+                        } else if (name.startsWith("get") && method.getReturnType() == long.class) {
+                            return settings.getOrDefault(name.substring(3).replace("Large", ""), 0).longValue();
+                        }
+                        return null;
+                    });
+        }
+
+        private ResultSet resultSet() {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                        if (!method.getName().equals("close")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        resultSetClosed = true;
+                        return null;
+                    });
+        }
+    }
+}
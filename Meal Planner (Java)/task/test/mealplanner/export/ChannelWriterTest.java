@@ -0,0 +1,72 @@
+package mealplanner.export;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ChannelWriterTest {
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final ChannelWriter writer = new ChannelWriter(Channels.newChannel(output));
+
+    @Test
+    public void appendsDecimalsWithoutTrailingZeros() throws IOException {
+        assertEquals("2", decimal(2));
+        assertEquals("0.5", decimal(0.5));
+        assertEquals("1.125", decimal(1.125));
+        assertEquals("0.05", decimal(0.05));
+        assertEquals("0.007", decimal(0.007));
+        assertEquals("1500", decimal(1500));
+        assertEquals("-0.25", decimal(-0.25));
+    }
+
+    @Test
+    public void roundsDecimalsToThousandths() throws IOException {
+        assertEquals("1.123", decimal(1.1234));
+        assertEquals("1.124", decimal(1.1236));
+        assertEquals("2", decimal(1.9999));
+        assertEquals("0", decimal(0.0001));
+        assertEquals("0", decimal(-0.0001));
+    }
+
+    @Test
+    public void appendsWholeNumbers() throws IOException {
+        writer.append(0L).append(' ').append(7L).append(' ').append(10L).append(' ').append(-305L).append(' ')
+                .append(Long.MAX_VALUE);
+
+        assertEquals("0 7 10 -305 " + Long.MAX_VALUE, finish());
+    }
+
+    @Test
+    public void encodesTextLongerThanTheBuffer() throws IOException {
+        // odd length, so that surrogate pairs straddle the buffer boundary
+        String text = "Crème brûlée 🍮 ".repeat(2000) + "€";
+        writer.append(text);
+
+        assertEquals(text, finish());
+    }
+
+    @Test
+    public void canBeFinishedTwice() throws IOException {
+        writer.append("first").newLine();
+        writer.finish();
+        writer.append("second");
+
+        assertEquals("first" + System.lineSeparator() + "second", finish());
+    }
+
+    private String decimal(double number) throws IOException {
+        output.reset();
+        writer.appendDecimal(number);
+        return finish();
+    }
+
+    private String finish() throws IOException {
+        writer.finish();
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package mealplanner.export;
+
+import mealplanner.controller.PlanRepository;
+import mealplanner.model.PlanKey;
+import mealplanner.model.ShoppingListVisitor;
+import mealplanner.model.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ShoppingListFormatTest {
+    private static final List<PlanKey> WEEK = List.of(new PlanKey(PlanKey.DEFAULT_HOUSEHOLD, LocalDate.of(2024, 1, 1)));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Item> items = List.of(
+            new Item("flour", 1500, Unit.GRAM),
+            new Item("eggs", 5, Unit.PIECE),
+            new Item("lemon", 1, Unit.PIECE),
+            new Item("milk", 250, Unit.MILLILITER),
+            new Item("salt, coarse", 2.5, Unit.GRAM),
+            new Item("\"fresh\" basil\\thyme", 1, Unit.PIECE));
+
+    @Test
+    public void writesOneReadableLinePerIngredient() throws IOException {
+        assertEquals(lines(
+                "flour 1.5 kg",
+                "eggs x5",
+                "lemon",
+                "milk 250 ml",
+                "salt, coarse 2.5 g",
+                "\"fresh\" basil\\thyme"), export("list.txt"));
+    }
+
+    @Test
+    public void writesCsvInBaseUnitsWithQuotedFields() throws IOException {
+        assertEquals(lines(
+                "ingredient,amount,unit",
+                "flour,1500,g",
+                "eggs,5,pc",
+                "lemon,1,pc",
+                "milk,250,ml",
+                "\"salt, coarse\",2.5,g",
+                "\"\"\"fresh\"\" basil\\thyme\",1,pc"), export("list.CSV"));
+    }
+
+    @Test
+    public void writesAJsonArrayWithEscapedNames() throws IOException {
+        assertEquals(lines(
+                "[",
+                "  {\"ingredient\": \"flour\", \"amount\": 1500, \"unit\": \"g\"},",
+                "  {\"ingredient\": \"eggs\", \"amount\": 5, \"unit\": \"pc\"},",
+                "  {\"ingredient\": \"lemon\", \"amount\": 1, \"unit\": \"pc\"},",
+                "  {\"ingredient\": \"milk\", \"amount\": 250, \"unit\": \"ml\"},",
+                "  {\"ingredient\": \"salt, coarse\", \"amount\": 2.5, \"unit\": \"g\"},",
+                "  {\"ingredient\": \"\\\"fresh\\\" basil\\\\thyme\", \"amount\": 1, \"unit\": \"pc\"}",
+                "]"), export("list.json"));
+    }
+
+    @Test
+    public void writesEmptyLists() throws IOException {
+        assertEquals("", export(List.of(), "empty.txt"));
+        assertEquals(lines("ingredient,amount,unit"), export(List.of(), "empty.csv"));
+        assertEquals(lines("[]"), export(List.of(), "empty.json"));
+    }
+
+    @Test
+    public void replacesTheTargetWithoutLeavingTemporaryFiles() throws IOException {
+        export("list.txt");
+        export(List.of(new Item("rice", 1000, Unit.GRAM)), "list.txt");
+
+        assertEquals(lines("rice 1 kg"), Files.readString(folder.getRoot().toPath().resolve("list.txt")));
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    private String export(String fileName) throws IOException {
+        return export(items, fileName);
+    }
+
+    private String export(List<Item> list, String fileName) throws IOException {
+        Path target = folder.getRoot().toPath().resolve(fileName);
+        new ShoppingListExporter(repository(list)).export(WEEK, target);
+        return Files.readString(target, StandardCharsets.UTF_8);
+    }
+
+    private static String lines(String... lines) {
+        return String.join(System.lineSeparator(), lines) + System.lineSeparator();
+    }
+
+    /**
+     * A plan repository that only streams the given shopping list.
+     */
+    private static PlanRepository repository(List<Item> list) {
+        return (PlanRepository) Proxy.newProxyInstance(PlanRepository.class.getClassLoader(),
+                new Class<?>[] {PlanRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("streamShoppingList")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    ShoppingListVisitor visitor = (ShoppingListVisitor) args[1];
+                    for (Item item : list) {
+                        visitor.visit(item.ingredient, item.amount, item.unit);
+                    }
+                    return null;
+                });
+    }
+
+    private record Item(String ingredient, double amount, Unit unit) {
+    }
+}
@@ -0,0 +1,160 @@
+package mealplanner.helper;
+
+import mealplanner.controller.MealRepository;
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.model.MealVisitor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class RecipeImporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parsesCsvWithQuotedOrSpreadIngredients() {
+        Meal quoted = RecipeImporter.parseCsvRow("breakfast, oatmeal ,\"200 g oats, 250 ml milk\"");
+        Meal spread = RecipeImporter.parseCsvRow("Lunch,tomato soup,tomatoes,water,salt");
+
+        assertEquals(MealCategory.BREAKFAST, quoted.getMealCategory());
+        assertEquals("oatmeal", quoted.getMealName());
+        assertArrayEquals(new String[]{"oats", "milk"}, quoted.getMealIngredients());
+        assertArrayEquals(new double[]{200, 250}, quoted.getAmounts(), 0);
+        assertEquals(MealCategory.LUNCH, spread.getMealCategory());
+        assertArrayEquals(new String[]{"tomatoes", "water", "salt"}, spread.getMealIngredients());
+    }
+
+    @Test
+    public void rejectsMalformedCsvRows() {
+        assertRejected(() -> RecipeImporter.parseCsvRow("dinner,ramen"), "expected category");
+        assertRejected(() -> RecipeImporter.parseCsvRow("brunch,ramen,noodles"), "wrong meal category");
+        assertRejected(() -> RecipeImporter.parseCsvRow("dinner,ramen 2,noodles"), "wrong meal name");
+        assertRejected(() -> RecipeImporter.parseCsvRow("dinner,ramen,\"noodles, 42\""), "wrong ingredients");
+        assertRejected(() -> RecipeImporter.parseCsvRow("dinner,ramen,\"noodles"), "unterminated");
+    }
+
+    @Test
+    public void parsesJsonWithAnArrayOrAStringOfIngredients() {
+        Meal array = RecipeImporter.parseJsonRow(
+                "{\"category\": \"dinner\", \"meal\": \"pasta\", \"ingredients\": [\"500 g spaghetti\", \"basil\"]}");
+        Meal string = RecipeImporter.parseJsonRow(
+                "{ \"meal\":\"pasta\",\"servings\":2,\"category\":\"dinner\",\"ingredients\":\"spaghetti, basil\" }");
+
+        assertEquals("pasta", array.getMealName());
+        assertArrayEquals(new String[]{"spaghetti", "basil"}, array.getMealIngredients());
+        assertArrayEquals(new double[]{500, 1}, array.getAmounts(), 0);
+        assertArrayEquals(new String[]{"spaghetti", "basil"}, string.getMealIngredients());
+    }
+
+    @Test
+    public void decodesJsonEscapes() {
+        Meal meal = RecipeImporter.parseJsonRow(
+                "{\"category\": \"lunch\", \"meal\": \"cr\\u0065pes\", \"ingredients\": [\"flour\", \"\\u0065ggs\"]}");
+
+        assertEquals("crepes", meal.getMealName());
+        assertArrayEquals(new String[]{"flour", "eggs"}, meal.getMealIngredients());
+    }
+
+    @Test
+    public void rejectsMalformedJsonRows() {
+        assertRejected(() -> RecipeImporter.parseJsonRow("{\"category\": \"lunch\", \"meal\": \"soup\"}"),
+                "expected \"category\"");
+        assertRejected(() -> RecipeImporter.parseJsonRow("{\"category\": \"lunch\", \"meal\": \"soup\""),
+                "unexpected end of JSON line");
+        assertRejected(() -> RecipeImporter.parseJsonRow("{\"category\" \"lunch\"}"), "malformed JSON");
+        assertRejected(() -> RecipeImporter.parseJsonRow("{\"category\": \"lunch\", \"meal\": \"soup"),
+                "unterminated JSON string");
+        assertRejected(() -> RecipeImporter.parseJsonRow("[\"lunch\"]"), "malformed JSON, expected '{'");
+    }
+
+    @Test
+    public void importsACsvFileInChunks() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("recipes.csv");
+        Files.write(file, List.of(
+                "category,meal,ingredients",
+                "breakfast,porridge,\"oats, milk\"",
+                "",
+                "lunch,soup,\"water, salt\"",
+                "brunch,waffles,flour",
+                "dinner,stew,beans",
+                "dinner,curry,rice"));
+        RecordingRepository repository = new RecordingRepository();
+        RecipeImporter importer = new RecipeImporter(repository, 2);
+
+        ImportResult result = importer.importFile(file);
+
+        assertEquals(4, result.imported());
+        assertEquals(1, result.rejected());
+        assertEquals(List.of("Line 5 rejected: wrong meal category \"brunch\""), result.rejections());
+        assertEquals(List.of(2, 2), repository.chunkSizes);
+    }
+
+    @Test
+    public void importsJsonLinesAndSkipsOnlyTakenNames() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("recipes.JSONL");
+        Files.write(file, List.of(
+                "{\"category\": \"lunch\", \"meal\": \"soup\", \"ingredients\": [\"water\"]}",
+                "{\"category\": \"lunch\", \"meal\": \"salad\", \"ingredients\": [\"lettuce\"]}",
+                "{\"category\": \"dinner\", \"meal\": \"soup\", \"ingredients\": [\"water\"]}",
+                "{\"category\": \"dinner\", \"meal\": \"stew\", \"ingredients\": [\"beans\"]}"));
+        RecordingRepository repository = new RecordingRepository();
+        RecipeImporter importer = new RecipeImporter(repository, 2);
+
+        ImportResult result = importer.importFile(file);
+
+        assertEquals(3, result.imported());
+        assertEquals(1, result.rejected()); // the second soup, the stew in its chunk is stored
+        assertEquals(List.of("Meal \"soup\" rejected: the name is taken."), result.rejections());
+        assertEquals(List.of("soup", "salad", "stew"), repository.names);
+    }
+
+    private static void assertRejected(ThrowingRunnable parse, String reason) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, parse);
+        assertTrue(e.getMessage(), e.getMessage().startsWith(reason));
+    }
+
+    /**
+     * Stores names only and skips the ones taken or repeated, like the insert that ignores conflicts.
+     */
+    private static class RecordingRepository implements MealRepository {
+        private final List<String> names = new ArrayList<>();
+        private final List<Integer> chunkSizes = new ArrayList<>();
+
+        @Override
+        public void addMealListener(Consumer<List<Meal>> listener) {
+        }
+
+        @Override
+        public List<String> persistMeals(List<Meal> meals) {
+            chunkSizes.add(meals.size());
+            List<String> skipped = new ArrayList<>();
+            for (Meal meal : meals) {
+                if (names.contains(meal.getMealName())) {
+                    skipped.add(meal.getMealName());
+                } else {
+                    names.add(meal.getMealName());
+                }
+            }
+            return skipped;
+        }
+
+        @Override
+        public List<Meal> getMealsByCategory(MealCategory category, boolean sort) {
+            return List.of();
+        }
+
+        @Override
+        public void streamMealsByCategory(MealCategory category, MealVisitor visitor) {
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package mealplanner.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MealTest {
+    @Test
+    public void readsAPlainIngredientAsOnePiece() {
+        Meal meal = new Meal(MealCategory.LUNCH, "salad", "lettuce, olive oil");
+
+        assertArrayEquals(new String[]{"lettuce", "olive oil"}, meal.getMealIngredients());
+        assertArrayEquals(new double[]{1, 1}, meal.getAmounts(), 0);
+        assertArrayEquals(new Unit[]{Unit.PIECE, Unit.PIECE}, meal.getUnits());
+        assertNull(meal.getIngredientIds());
+    }
+
+    @Test
+    public void readsAmountsWithAndWithoutUnits() {
+        Meal meal = new Meal(MealCategory.DINNER, "pancakes", "200 g flour, 2 eggs, 1.5kg potatoes, 0.5 l milk");
+
+        assertArrayEquals(new String[]{"flour", "eggs", "potatoes", "milk"}, meal.getMealIngredients());
+        assertArrayEquals(new double[]{200, 2, 1500, 500}, meal.getAmounts(), 1e-9);
+        assertArrayEquals(new Unit[]{Unit.GRAM, Unit.PIECE, Unit.GRAM, Unit.MILLILITER}, meal.getUnits());
+    }
+
+    @Test
+    public void keepsAWordAfterTheAmountThatIsNoUnit() {
+        Meal meal = new Meal(MealCategory.BREAKFAST, "omelette", "2 large eggs, 3 TBSP butter");
+
+        assertArrayEquals(new String[]{"large eggs", "butter"}, meal.getMealIngredients());
+        assertArrayEquals(new double[]{2, 45}, meal.getAmounts(), 1e-9);
+        assertArrayEquals(new Unit[]{Unit.PIECE, Unit.MILLILITER}, meal.getUnits());
+    }
+
+    @Test
+    public void printsAmountsOnlyWhereTheyDifferFromOnePiece() {
+        Meal meal = new Meal(MealCategory.DINNER, "soup", "1500 g potatoes, 2 carrots, salt, 250 ml cream");
+        String lineSeparator = System.lineSeparator();
+
+        assertEquals("Name: soup" + lineSeparator
+                + "Ingredients:\n"
+                + "1.5 kg potatoes" + lineSeparator
+                + "2 carrots" + lineSeparator
+                + "salt" + lineSeparator
+                + "250 ml cream" + lineSeparator, meal.toString());
+    }
+}
@@ -0,0 +1,36 @@
+package mealplanner.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UnitTest {
+    @Test
+    public void mapsWordsToBaseUnitsAndFactors() {
+        assertEquals(Unit.GRAM, Unit.forWord("KG"));
+        assertEquals(1000, Unit.factorOf("kg"), 0);
+        assertEquals(Unit.MILLILITER, Unit.forWord("tbsp"));
+        assertEquals(15, Unit.factorOf("Tbsp"), 0);
+        assertEquals(453.59237, Unit.factorOf("lbs"), 1e-9);
+        assertEquals(Unit.PIECE, Unit.forWord("pieces"));
+        assertNull(Unit.forWord("large"));
+    }
+
+    @Test
+    public void parsesStoredSymbols() {
+        for (Unit unit : Unit.values()) {
+            assertEquals(unit, Unit.forSymbol(unit.getSymbol()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> Unit.forSymbol("kg"));
+    }
+
+    @Test
+    public void showsLargeAmountsInTheNextUnit() {
+        assertEquals("200 g", Unit.GRAM.format(200));
+        assertEquals("1 kg", Unit.GRAM.format(1000));
+        assertEquals("1.5 l", Unit.MILLILITER.format(1500));
+        assertEquals("999.5 ml", Unit.MILLILITER.format(999.5));
+        assertEquals("1500", Unit.PIECE.format(1500));
+        assertEquals("0.333", Unit.PIECE.format(1.0 / 3));
+    }
+}
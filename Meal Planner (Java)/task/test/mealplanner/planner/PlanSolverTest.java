@@ -0,0 +1,164 @@
+package mealplanner.planner;
+
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.model.PlanLineItem;
+import mealplanner.model.Unit;
+import mealplanner.model.Weekday;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PlanSolverTest {
+    private static final Set<String> NONE = Set.of();
+
+    @Test
+    public void plansEverySlotOfTheWeek() {
+        PlanSolution solution = new PlanSolver(catalog(3)).solve(new PlanConstraints(0, NONE, NONE, 1));
+
+        assertNotNull(solution);
+        List<PlanLineItem> items = solution.getPlanLineItems();
+        assertEquals(Weekday.values().length * MealCategory.values().length, items.size());
+        assertEquals(Weekday.MONDAY, items.get(0).getWeekday());
+        assertEquals(MealCategory.BREAKFAST, items.get(0).getMealCategory());
+    }
+
+    @Test
+    public void usesTheFewestIngredientsWithoutConstraints() {
+        List<List<Meal>> catalog = catalog(3);
+        catalog.get(MealCategory.LUNCH.ordinal()).add(meal(MealCategory.LUNCH, "plain lunch", "bread"));
+        catalog.get(MealCategory.DINNER.ordinal()).add(meal(MealCategory.DINNER, "plain dinner", "bread"));
+        catalog.get(MealCategory.BREAKFAST.ordinal()).add(meal(MealCategory.BREAKFAST, "plain breakfast", "bread"));
+
+        PlanSolution solution = new PlanSolver(catalog).solve(new PlanConstraints(0, NONE, NONE, 1));
+
+        assertEquals(1, solution.getDistinctIngredients());
+        assertTrue(solution.getPlanLineItems().stream().allMatch(item -> item.getMealName().startsWith("plain")));
+    }
+
+    @Test
+    public void neverPlansExcludedIngredients() {
+        List<List<Meal>> catalog = catalog(3);
+        PlanSolution solution = new PlanSolver(catalog).solve(new PlanConstraints(0, NONE, Set.of("milk"), 7));
+
+        assertNotNull(solution);
+        for (PlanLineItem item : solution.getPlanLineItems()) {
+            assertFalse(item.getMealName(), ingredientsOf(catalog, item).contains("milk"));
+        }
+    }
+
+    @Test
+    public void plansRequiredIngredientsAtLeastOnce() {
+        List<List<Meal>> catalog = catalog(3);
+        catalog.get(MealCategory.DINNER.ordinal()).add(meal(MealCategory.DINNER, "saffron risotto", "rice, saffron"));
+
+        PlanSolution solution = new PlanSolver(catalog).solve(new PlanConstraints(0, Set.of("saffron"), NONE, 3));
+
+        assertNotNull(solution);
+        assertTrue(solution.getPlanLineItems().stream()
+                .anyMatch(item -> item.getMealName().equals("saffron risotto")));
+    }
+
+    @Test
+    public void returnsNullForARequiredIngredientNoMealHas() {
+        assertNull(new PlanSolver(catalog(3)).solve(new PlanConstraints(0, Set.of("truffle"), NONE, 1)));
+    }
+
+    @Test
+    public void respectsTheNoRepeatWindow() {
+        PlanSolution solution = new PlanSolver(catalog(3)).solve(new PlanConstraints(3, NONE, NONE, 5));
+
+        assertNotNull(solution);
+        Map<MealCategory, String[]> byDay = new EnumMap<>(MealCategory.class);
+        for (PlanLineItem item : solution.getPlanLineItems()) {
+            byDay.computeIfAbsent(item.getMealCategory(), category -> new String[Weekday.values().length])
+                    [item.getWeekday().ordinal()] = item.getMealName();
+        }
+        for (String[] days : byDay.values()) {
+            for (int day = 0; day + 2 < days.length; day++) {
+                assertEquals(3, Set.of(days[day], days[day + 1], days[day + 2]).size());
+            }
+        }
+    }
+
+    @Test
+    public void returnsNullWhenTooFewMealsForTheNoRepeatWindow() {
+        assertNull(new PlanSolver(catalog(3)).solve(new PlanConstraints(4, NONE, NONE, 1)));
+    }
+
+    @Test
+    public void sameSeedGivesTheSamePlan() {
+        PlanSolver solver = new PlanSolver(catalog(6));
+        PlanConstraints constraints = new PlanConstraints(2, NONE, Set.of("milk"), 42);
+
+        List<PlanLineItem> first = solver.solve(constraints).getPlanLineItems();
+        List<PlanLineItem> second = new PlanSolver(catalog(6)).solve(constraints).getPlanLineItems();
+
+        assertEquals(names(first), names(second));
+    }
+
+    @Test
+    public void countsIngredientsOnceWhenMealsMixDictionaryIdsAndNames() {
+        // "eggs" arrives first without an id, then with id 7: both are one ingredient, and "milk" with id 8
+        // must not share the index
+        List<List<Meal>> catalog = emptyCatalog();
+        catalog.get(MealCategory.BREAKFAST.ordinal()).add(meal(MealCategory.BREAKFAST, "boiled eggs", "eggs"));
+        catalog.get(MealCategory.BREAKFAST.ordinal()).add(meal(MealCategory.BREAKFAST, "toast", "bread"));
+        catalog.get(MealCategory.LUNCH.ordinal()).add(storedMeal(MealCategory.LUNCH, "omelette",
+                new String[]{"eggs", "milk"}, new int[]{7, 8}));
+        catalog.get(MealCategory.DINNER.ordinal()).add(storedMeal(MealCategory.DINNER, "porridge",
+                new String[]{"milk", "oats"}, new int[]{8, 9}));
+        PlanSolver solver = new PlanSolver(catalog);
+
+        PlanSolution solution = solver.solve(new PlanConstraints(0, NONE, NONE, 1));
+
+        assertEquals(3, solution.getDistinctIngredients()); // eggs, milk, oats
+        assertNull(solver.solve(new PlanConstraints(0, NONE, Set.of("eggs"), 1))); // excludes the only lunch
+    }
+
+    private static List<String> names(List<PlanLineItem> items) {
+        return items.stream().map(PlanLineItem::getMealName).toList();
+    }
+
+    private static Set<String> ingredientsOf(List<List<Meal>> catalog, PlanLineItem item) {
+        return catalog.get(item.getMealCategory().ordinal()).stream()
+                .filter(meal -> meal.getMealName().equals(item.getMealName()))
+                .findFirst()
+                .map(meal -> Set.of(meal.getMealIngredients()))
+                .orElseThrow();
+    }
+
+    private static List<List<Meal>> catalog(int mealsPerCategory) {
+        List<List<Meal>> catalog = emptyCatalog();
+        String[] extras = {"milk", "tomato", "cheese", "rice", "beans", "apple"};
+        for (MealCategory category : MealCategory.values()) {
+            for (int i = 0; i < mealsPerCategory; i++) {
+                String name = category.name().toLowerCase() + " " + i;
+                catalog.get(category.ordinal()).add(meal(category, name, "salt, " + extras[i % extras.length]));
+            }
+        }
+        return catalog;
+    }
+
+    private static List<List<Meal>> emptyCatalog() {
+        List<List<Meal>> catalog = new ArrayList<>();
+        for (int i = 0; i < MealCategory.values().length; i++) {
+            catalog.add(new ArrayList<>());
+        }
+        return catalog;
+    }
+
+    private static Meal meal(MealCategory category, String name, String ingredients) {
+        return new Meal(category, name, ingredients);
+    }
+
+    private static Meal storedMeal(MealCategory category, String name, String[] ingredients, int[] ids) {
+        double[] amounts = new double[ingredients.length];
+        Unit[] units = new Unit[ingredients.length];
+        Arrays.fill(amounts, 1);
+        Arrays.fill(units, Unit.PIECE);
+        return new Meal(category, name, ingredients, ids, amounts, units);
+    }
+}
@@ -0,0 +1,83 @@
+package mealplanner.search;
+
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MealIndexTest {
+    private static final Set<String> NONE = Set.of();
+
+    private final MemoryRepository repository = new MemoryRepository()
+            .add(MealCategory.BREAKFAST, "scrambled eggs", "eggs, butter, salt")
+            .add(MealCategory.BREAKFAST, "porridge", "oats, milk")
+            .add(MealCategory.LUNCH, "egg salad", "Eggs, lettuce, mayonnaise")
+            .add(MealCategory.DINNER, "spaghetti carbonara", "spaghetti, eggs, bacon, parmesan")
+            .add(MealCategory.DINNER, "spaghetti aglio e olio", "spaghetti, garlic, olive oil");
+    private final MealIndex index = new MealIndex(new SearchCatalog(repository));
+
+    @Test
+    public void findsMealsWithAllRequiredIngredients() {
+        assertEquals(List.of("scrambled eggs", "egg salad", "spaghetti carbonara"),
+                names(index.search(new MealQuery(Set.of("eggs"), NONE, ""))));
+        assertEquals(List.of("spaghetti carbonara"),
+                names(index.search(new MealQuery(Set.of("EGGS", " spaghetti "), NONE, ""))));
+        assertEquals(List.of(), names(index.search(new MealQuery(Set.of("eggs", "truffle"), NONE, ""))));
+    }
+
+    @Test
+    public void dropsMealsWithExcludedIngredients() {
+        assertEquals(List.of("spaghetti aglio e olio"),
+                names(index.search(new MealQuery(Set.of("spaghetti"), Set.of("bacon"), ""))));
+        assertEquals(List.of("porridge", "spaghetti aglio e olio"),
+                names(index.search(new MealQuery(NONE, Set.of("eggs", "truffle"), ""))));
+    }
+
+    @Test
+    public void matchesAnyWordOfTheNameByPrefix() {
+        assertEquals(List.of("scrambled eggs", "egg salad"),
+                names(index.search(new MealQuery(NONE, NONE, "egg"))));
+        assertEquals(List.of("spaghetti carbonara"),
+                names(index.search(new MealQuery(Set.of("bacon"), NONE, "Spag"))));
+        assertEquals(5, index.search(new MealQuery(NONE, NONE, "")).size());
+    }
+
+    @Test
+    public void reportsTheCategoryOfEveryHit() {
+        List<SearchHit> hits = index.search(new MealQuery(Set.of("lettuce"), NONE, ""));
+
+        assertEquals(List.of(new SearchHit(MealCategory.LUNCH, "egg salad")), hits);
+    }
+
+    @Test
+    public void indexesMealsCommittedAfterTheLoad() {
+        assertEquals(5, index.search(new MealQuery(NONE, NONE, "")).size());
+
+        repository.persistMeals(List.of(new Meal(MealCategory.LUNCH, "eggs benedict", "eggs, muffin, ham")));
+
+        assertEquals(List.of("eggs benedict"), names(index.search(new MealQuery(Set.of("muffin"), NONE, ""))));
+        assertEquals(6, index.size());
+    }
+
+    @Test
+    public void sharesOneLoadBetweenIndexes() {
+        SearchCatalog catalog = new SearchCatalog(repository);
+        MealIndex first = new MealIndex(catalog);
+        first.search(new MealQuery(NONE, NONE, ""));
+        int loads = repository.loads;
+
+        MealIndex second = new MealIndex(catalog); // registered after the load
+        List<SearchHit> hits = second.search(new MealQuery(Set.of("garlic"), NONE, ""));
+
+        assertEquals(loads, repository.loads);
+        assertEquals(List.of("spaghetti aglio e olio"), names(hits));
+    }
+
+    private static List<String> names(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::mealName).toList();
+    }
+}
@@ -0,0 +1,50 @@
+package mealplanner.search;
+
+import mealplanner.controller.MealRepository;
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import mealplanner.model.MealVisitor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Meals in insertion order, with the listeners a storage backend calls after every commit.
+ */
+class MemoryRepository implements MealRepository {
+    private final List<Meal> meals = new ArrayList<>();
+    private final List<Consumer<List<Meal>>> listeners = new ArrayList<>();
+    int loads;
+
+    MemoryRepository add(MealCategory category, String name, String ingredients) {
+        persistMeal(new Meal(category, name, ingredients));
+        return this;
+    }
+
+    @Override
+    public void addMealListener(Consumer<List<Meal>> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public List<String> persistMeals(List<Meal> newMeals) {
+        meals.addAll(newMeals);
+        listeners.forEach(listener -> listener.accept(newMeals));
+        return List.of();
+    }
+
+    @Override
+    public List<Meal> getMealsByCategory(MealCategory category, boolean sort) {
+        loads++;
+        return meals.stream().filter(meal -> meal.getMealCategory() == category).toList();
+    }
+
+    @Override
+    public void streamMealsByCategory(MealCategory category, MealVisitor visitor) throws IOException {
+        for (Meal meal : getMealsByCategory(category, false)) {
+            visitor.visit(meal);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package mealplanner.search;
+
+import mealplanner.model.Meal;
+import mealplanner.model.MealCategory;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PantryMatcherTest {
+    private final MemoryRepository repository = new MemoryRepository()
+            .add(MealCategory.BREAKFAST, "scrambled eggs", "eggs, butter, salt")
+            .add(MealCategory.BREAKFAST, "porridge", "oats, milk")
+            .add(MealCategory.LUNCH, "egg salad", "Eggs, lettuce, mayonnaise")
+            .add(MealCategory.DINNER, "omelette", "eggs, milk, salt")
+            .add(MealCategory.DINNER, "pancakes", "flour, eggs, milk, butter");
+    private final SearchCatalog catalog = new SearchCatalog(repository);
+    private final PantryMatcher matcher = new PantryMatcher(catalog);
+
+    @Test
+    public void ranksByMissingIngredientsThenCategory() {
+        List<PantryMatch> matches = matcher.match(List.of("eggs", "milk", "salt", "butter"), 1);
+
+        assertEquals(List.of("scrambled eggs", "omelette", "porridge", "pancakes"), names(matches));
+        assertEquals(List.of(0, 0, 1, 1), matches.stream().map(PantryMatch::missing).toList());
+        assertEquals(List.of("oats"), matches.get(2).missingIngredients());
+        assertEquals(MealCategory.BREAKFAST, matches.get(2).category());
+    }
+
+    @Test
+    public void listsMissingIngredientsAsTheRecipeSpellsThem() {
+        PantryMatch salad = matcher.match(List.of(" LETTUCE "), 2).stream()
+                .filter(match -> match.mealName().equals("egg salad"))
+                .findFirst()
+                .orElseThrow();
+
+        assertEquals(List.of("Eggs", "mayonnaise"), salad.missingIngredients());
+    }
+
+    @Test
+    public void ignoresPantryItemsNoMealNeeds() {
+        assertEquals(List.of("porridge"), names(matcher.match(List.of("oats", "milk", "truffle"), 0)));
+        assertEquals(List.of(), matcher.match(List.of(), 0));
+    }
+
+    @Test
+    public void allowsAnyNumberOfMissingIngredients() {
+        List<PantryMatch> matches = matcher.match(List.of("eggs"), Integer.MAX_VALUE);
+
+        assertEquals(5, matches.size());
+        assertEquals(3, matches.get(matches.size() - 1).missing());
+    }
+
+    @Test
+    public void matchesMealsCommittedAfterTheLoad() {
+        matcher.match(List.of(), 0);
+
+        repository.persistMeals(List.of(new Meal(MealCategory.LUNCH, "toast", "bread, butter")));
+
+        assertEquals(List.of("toast"), names(matcher.match(List.of("bread", "butter"), 0)));
+    }
+
+    @Test
+    public void agreesWithCountingEveryMeal() {
+        Random random = new Random(11);
+        MemoryRepository large = new MemoryRepository();
+        for (int i = 0; i < 600; i++) {
+            Set<String> ingredients = new LinkedHashSet<>();
+            for (int j = 1 + random.nextInt(6); j > 0; j--) {
+                ingredients.add("ingredient" + random.nextInt(200)); // spans four bitset words
+            }
+            large.add(MealCategory.values()[i % 3], "meal " + i, String.join(", ", ingredients));
+        }
+        PantryMatcher largeMatcher = new PantryMatcher(new SearchCatalog(large));
+        Set<String> pantry = new HashSet<>();
+        for (int i = 0; i < 120; i++) {
+            pantry.add("ingredient" + random.nextInt(200));
+        }
+
+        Map<String, Integer> missing = new HashMap<>();
+        for (PantryMatch match : largeMatcher.match(pantry, 2)) {
+            missing.put(match.mealName(), match.missing());
+        }
+
+        int expectedMatches = 0;
+        for (MealCategory category : MealCategory.values()) {
+            for (Meal meal : large.getMealsByCategory(category, false)) {
+                long lacking = Arrays.stream(meal.getMealIngredients()).filter(name -> !pantry.contains(name)).count();
+                if (lacking <= 2) {
+                    expectedMatches++;
+                    assertEquals(meal.getMealName(), Integer.valueOf((int) lacking), missing.get(meal.getMealName()));
+                }
+            }
+        }
+        assertEquals(expectedMatches, missing.size());
+    }
+
+    private static List<String> names(List<PantryMatch> matches) {
+        return matches.stream().map(PantryMatch::mealName).toList();
+    }
+}
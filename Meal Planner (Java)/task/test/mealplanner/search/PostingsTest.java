@@ -0,0 +1,75 @@
+package mealplanner.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PostingsTest {
+    @Test
+    public void keepsEachMealOnce() {
+        Postings postings = postings(1, 1, 4, 4, 9);
+
+        assertEquals(3, postings.size());
+        assertTrue(postings.contains(4));
+        assertFalse(postings.contains(5));
+    }
+
+    @Test
+    public void seeksTheFirstMealNotSmaller() {
+        Postings postings = postings(2, 4, 6, 8, 10, 12, 14, 16, 18, 20);
+
+        assertEquals(0, postings.seek(0, 0));
+        assertEquals(0, postings.seek(2, 0));
+        assertEquals(1, postings.seek(3, 0));
+        assertEquals(9, postings.seek(20, 0));
+        assertEquals(10, postings.seek(21, 0));
+        assertEquals(5, postings.seek(1, 5)); // never before from
+        assertEquals(7, postings.seek(15, 5));
+        assertEquals(10, postings.seek(1, 10));
+    }
+
+    @Test
+    public void seekAgreesWithALinearScan() {
+        Random random = new Random(7);
+        Postings postings = new Postings();
+        List<Integer> meals = new ArrayList<>();
+        for (int meal = 0; meal < 5000; meal++) {
+            if (random.nextInt(10) == 0) {
+                postings.add(meal);
+                meals.add(meal);
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            int target = random.nextInt(5100);
+            int from = random.nextInt(meals.size() + 1);
+            int expected = from;
+            while (expected < meals.size() && meals.get(expected) < target) {
+                expected++;
+            }
+            assertEquals(expected, postings.seek(target, from));
+        }
+    }
+
+    @Test
+    public void intersectsListsOfAnyLength() {
+        int[] common = MealIndex.intersect(new ArrayList<>(List.of(
+                postings(1, 3, 5, 7, 9, 11, 13, 15, 17, 19, 21, 23, 25, 27, 29),
+                postings(5, 15, 25, 35),
+                postings(0, 5, 10, 15, 20, 25, 30))));
+
+        assertArrayEquals(new int[]{5, 15, 25}, common);
+        assertArrayEquals(new int[0], MealIndex.intersect(new ArrayList<>(List.of(postings(1, 2), postings(3, 4)))));
+        assertArrayEquals(new int[]{2, 4}, MealIndex.intersect(new ArrayList<>(List.of(postings(2, 4)))));
+    }
+
+    private static Postings postings(int... meals) {
+        Postings postings = new Postings();
+        Arrays.stream(meals).forEach(postings::add);
+        return postings;
+    }
+}